@@ -0,0 +1,197 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.util.ConfigAdapter;
+import com.typingdna.util.Constants;
+import com.typingdna.util.HashAlgorithm;
+import org.forgerock.openam.scripting.service.ScriptConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Plain ConfigAdapter with the node defaults, so the measured code does not go through Mockito on every config read.
+ */
+public class BenchmarkConfig implements ConfigAdapter {
+
+    private final ScriptConfiguration script;
+
+    public BenchmarkConfig() {
+        script = mock(ScriptConfiguration.class);
+        when(script.getScript()).thenReturn(Constants.typingPatternVisualizer);
+    }
+
+    @Override
+    public String apiUrl() {
+        return "http://localhost:8080";
+    }
+
+    @Override
+    public String apiKey() {
+        return "apiKey";
+    }
+
+    @Override
+    public char[] apiSecret() {
+        return "apiSecret".toCharArray();
+    }
+
+    @Override
+    public Configuration authAPIConfiguration() {
+        return Configuration.Basic;
+    }
+
+    @Override
+    public int retries() {
+        return 2;
+    }
+
+    @Override
+    public int previousPatternsLimit() {
+        return 1;
+    }
+
+    @Override
+    public String textToEnter() {
+        return "text to enter";
+    }
+
+    @Override
+    public String usernameSalt() {
+        return "1234";
+    }
+
+    @Override
+    public String requestIdentifier() {
+        return "";
+    }
+
+    @Override
+    public ScriptConfiguration script() {
+        return script;
+    }
+
+    @Override
+    public boolean displayMessage() {
+        return true;
+    }
+
+    @Override
+    public boolean showVisualizer() {
+        return true;
+    }
+
+    @Override
+    public boolean disableCopyAndPaste() {
+        return false;
+    }
+
+    @Override
+    public int requestTimeout() {
+        return 8000;
+    }
+
+    @Override
+    public int connectionPoolSize() {
+        return Constants.DEFAULT_CONNECTION_POOL_SIZE;
+    }
+
+    @Override
+    public boolean parallelPreCheck() {
+        return false;
+    }
+
+    @Override
+    public int patternCountCacheTtl() {
+        return 0;
+    }
+
+    @Override
+    public int replayWindowSize() {
+        return 0;
+    }
+
+    @Override
+    public int replayFalsePositivesPerMillion() {
+        return 1;
+    }
+
+    @Override
+    public int circuitBreakerOpenDuration() {
+        return 0;
+    }
+
+    @Override
+    public CircuitOpenOutcome circuitOpenOutcome() {
+        return CircuitOpenOutcome.FAIL;
+    }
+
+    @Override
+    public int adaptiveTimeoutMultiplier() {
+        return 0;
+    }
+
+    @Override
+    public int hedgePercentile() {
+        return 0;
+    }
+
+    @Override
+    public boolean debugLogging() {
+        return false;
+    }
+
+    @Override
+    public int debugSamplePercent() {
+        return 0;
+    }
+
+    @Override
+    public List<String> targetIds() {
+        return Collections.singletonList("idToken2");
+    }
+
+    @Override
+    public String submitButtonId() {
+        return "loginButton_0";
+    }
+
+    @Override
+    public String staticScriptOrigin() {
+        return "";
+    }
+
+    @Override
+    public String staticScriptDirectory() {
+        return "";
+    }
+
+    @Override
+    public boolean minifyRecorderScript() {
+        return true;
+    }
+
+    @Override
+    public HashAlgorithm hashAlgorithm() {
+        return HashAlgorithm.SHA256;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.util.HashAlgorithm;
+import com.typingdna.util.HelperFunctions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelperFunctionsBenchmark {
+
+    @Param({"MD5", "SHA1", "SHA256"})
+    private HashAlgorithm algorithm;
+
+    private final String username = "john.doe@example.com";
+    private final String salt = "1234";
+    private final String textToEnter = "Please type the text you see on the screen to continue";
+
+    @Benchmark
+    public String hashText() {
+        return HelperFunctions.hashText(username, salt, algorithm);
+    }
+
+    @Benchmark
+    public String fnv1a32() {
+        return HelperFunctions.fnv1a32(textToEnter);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.util.JSONData;
+import org.forgerock.openam.utils.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Field lookups on a parsed /verify response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONDataBenchmark {
+
+    private JSONData data;
+
+    @Setup
+    public void setUp() {
+        data = new JSONData(new JsonObject()
+                .put("message_code", 1)
+                .put("status", 200)
+                .put("success", 1)
+                .put("result", 1)
+                .put("score", 87)
+                .put("net_score", 87)
+                .put("action", "verify;enroll")
+                .put("enrollment", 1)
+                .build(), 200);
+    }
+
+    @Benchmark
+    public Object getValue_Present() {
+        return data.getValue("result", 0);
+    }
+
+    @Benchmark
+    public Object getValue_Missing() {
+        return data.getValue("custom_field", "");
+    }
+}
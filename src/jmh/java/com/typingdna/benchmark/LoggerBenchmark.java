@@ -0,0 +1,66 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.util.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug logging while debug is off, as on every login in production. The gc profiler should report no allocation
+ * (gc.alloc.rate.norm close to 0 B/op); with more than two arguments this relies on the JIT removing the varargs array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+    private final Logger logger = Logger.getInstance();
+    private final String username = "4f8e5c1a9d2b7e3f6a0c8d1e5b9f2a7c";
+    private final DeviceType deviceType = DeviceType.DESKTOP;
+    private final String reason = "timeout";
+
+    @Setup
+    public void setUp() {
+        logger.setDebug(false);
+    }
+
+    @Benchmark
+    public void debugDisabled() {
+        logger.debug("In TypingDNADecisionNode: check user username={} deviceType={}", username, deviceType);
+    }
+
+    @Benchmark
+    public void debugDisabledVarargs() {
+        logger.debug("In TypingDNADecisionNode: failed username={} deviceType={} reason={}", username, deviceType, reason);
+    }
+}
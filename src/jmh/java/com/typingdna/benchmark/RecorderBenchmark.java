@@ -0,0 +1,66 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.core.ActionType;
+import com.typingdna.core.Recorder;
+import com.typingdna.core.statechanges.StateChange;
+import com.typingdna.util.Constants;
+import org.forgerock.openam.utils.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the recorder form, which is dominated by building the recorder script.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecorderBenchmark {
+
+    private BenchmarkConfig config;
+
+    @Setup
+    public void setUp() {
+        config = new BenchmarkConfig();
+    }
+
+    @Benchmark
+    public StateChange displayForm() {
+        com.typingdna.util.State state = new com.typingdna.util.State(
+                new JsonObject().put(Constants.MESSAGE, "Authentication failed. Try again...").build(),
+                new JsonObject().build(),
+                new ArrayList<>());
+
+        return new Recorder(config, state).displayForm(ActionType.VERIFY);
+    }
+}
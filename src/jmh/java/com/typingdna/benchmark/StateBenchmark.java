@@ -0,0 +1,75 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.core.ActionType;
+import com.typingdna.util.Constants;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.utils.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
+
+/**
+ * The put/copy cycle a Decision node goes through for every login.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    private static final String typingPattern = "0,3.2,0,0,11,1004326382,1,77,-1,1,61,-1,1,150,-1,2,68,23,2,27,6,1,0,0,1,2,1,4224896695,1,1,0,0,0,1,1080,1920,1,1015,106,0,1495460187|2983,119|210,74|180,92|75,47|89,150|165,76|90,107|123,72|193,94|93,101|116,105";
+
+    @Benchmark
+    public void putAndCopy(Blackhole blackhole) {
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "john.doe@example.com")
+                .put(Constants.DEVICE_TYPE, 0)
+                .put(Constants.TEXT_TO_ENTER, "text to enter")
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        com.typingdna.util.State state = new com.typingdna.util.State(sharedState, transientState, new ArrayList<>());
+        state.setDeviceType(DeviceType.DESKTOP);
+        state.setPatternsEnrolled(3);
+        state.incrementRetries();
+        state.setPreviousAction(ActionType.VERIFY);
+        state.setMessage("Authentication failed. Try again...");
+
+        blackhole.consume(state.getSharedState());
+        blackhole.consume(state.getTransientState());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.benchmark;
+
+import com.typingdna.api.TypingDNAAPI;
+import com.typingdna.api.model.CheckUserResponse;
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.api.model.PatternType;
+import com.typingdna.api.model.VerifyResponse;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+
+import static org.forgerock.util.promise.Promises.newResultPromise;
+
+/**
+ * TypingDNAAPI answering from memory, so the business logic can be measured without the network.
+ */
+public class StubTypingDNAAPI extends TypingDNAAPI {
+
+    private final int patternCount;
+    private final boolean match;
+
+    public StubTypingDNAAPI(int patternCount, boolean match) throws NodeProcessException {
+        super("http://localhost:8080", "apiKey", "apiSecret".toCharArray(), 8000);
+        this.patternCount = patternCount;
+        this.match = match;
+    }
+
+    @Override
+    public Promise<CheckUserResponse, NeverThrowsException> checkUserAsync(String username, PatternType patternType, String textId, DeviceType deviceType, String requestIdentifier) {
+        CheckUserResponse response = new CheckUserResponse();
+        response.setPatternCount(patternCount);
+        return newResultPromise(response);
+    }
+
+    @Override
+    public Promise<VerifyResponse, NeverThrowsException> verifyAsync(String username, String typingPattern, String requestIdentifier) {
+        VerifyResponse response = new VerifyResponse();
+        response.setMatch(match);
+        response.setPatternEnrolled(match);
+        return newResultPromise(response);
+    }
+}
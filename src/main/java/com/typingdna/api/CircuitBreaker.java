@@ -0,0 +1,252 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.util.Constants;
+import com.typingdna.util.Logger;
+import com.typingdna.util.Metrics;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.Promise;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static org.forgerock.util.promise.Promises.newExceptionPromise;
+
+/**
+ * Circuit breaker shared by all the nodes calling the same TypingDNA API endpoint. It opens once at least half of the
+ * last {@link Constants#CIRCUIT_BREAKER_WINDOW_SIZE} requests failed or took longer than the slow call threshold; while
+ * it is open requests fail immediately with a {@link CircuitBreakerOpenException}. After the open duration a single
+ * trial request is let through (half-open), and its result closes or opens the circuit again. Every state change
+ * starts a new generation, and only requests acquired in the current generation are recorded, so a straggler sent
+ * while the circuit was closed cannot decide the trial.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    static final long NO_PERMIT = -1;
+
+    private static final Map<BreakerKey, CircuitBreaker> breakers = new HashMap<>();
+    private static final CircuitBreaker disabled = new CircuitBreaker("", 0, 0, System::nanoTime);
+
+    private final String apiUrl;
+    private final long openDuration;
+    private final long slowCallThreshold;
+    private final LongSupplier clock;
+
+    private final boolean[] window = new boolean[Constants.CIRCUIT_BREAKER_WINDOW_SIZE];
+    private int windowIndex = 0;
+    private int calls = 0;
+    private int failures = 0;
+
+    private State state = State.CLOSED;
+    private long generation = 0;
+    private long openedAt;
+    private boolean trialInFlight = false;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    CircuitBreaker(String apiUrl, int openDurationSeconds, int slowCallThresholdMillis, LongSupplier clock) {
+        this.apiUrl = apiUrl;
+        this.openDuration = TimeUnit.SECONDS.toNanos(openDurationSeconds);
+        this.slowCallThreshold = TimeUnit.MILLISECONDS.toNanos(slowCallThresholdMillis);
+        this.clock = clock;
+    }
+
+    public static synchronized CircuitBreaker forEndpoint(String apiUrl, int openDurationSeconds, int slowCallThresholdMillis) {
+        if (openDurationSeconds <= 0) {
+            return disabled;
+        }
+
+        return breakers.computeIfAbsent(new BreakerKey(apiUrl, openDurationSeconds, slowCallThresholdMillis), key -> {
+            CircuitBreaker circuitBreaker = new CircuitBreaker(key.apiUrl, key.openDurationSeconds, key.slowCallThresholdMillis, System::nanoTime);
+            String name = String.format("circuitBreaker %s %ds %dms", key.apiUrl, key.openDurationSeconds, key.slowCallThresholdMillis);
+            Metrics.getInstance().registerGauge(name + " open", () -> circuitBreaker.getState() == State.CLOSED ? 0 : 1);
+            Metrics.getInstance().registerGauge(name + " rejected", circuitBreaker::getRejected);
+            return circuitBreaker;
+        });
+    }
+
+    public static CircuitBreaker disabled() {
+        return disabled;
+    }
+
+    public static synchronized void shutdown() {
+        breakers.clear();
+        Metrics.getInstance().unregisterGauges("circuitBreaker ");
+    }
+
+    public <V> Promise<V, NodeProcessException> call(Supplier<Promise<V, NodeProcessException>> request) {
+        return call(request, () -> slowCallThreshold);
+    }
+
+    /**
+     * @param slowCallThreshold the duration in ns after which the request counts as failed, or 0 to only count the
+     *                          errors; read once the request completed
+     */
+    public <V> Promise<V, NodeProcessException> call(Supplier<Promise<V, NodeProcessException>> request, LongSupplier slowCallThreshold) {
+        if (this == disabled) {
+            return request.get();
+        }
+        long permit = tryAcquire();
+        if (permit == NO_PERMIT) {
+            rejected.incrementAndGet();
+            return newExceptionPromise(new CircuitBreakerOpenException(apiUrl));
+        }
+
+        long start = clock.getAsLong();
+        return request.get().thenOnResultOrException(
+                result -> {
+                    long threshold = slowCallThreshold.getAsLong();
+                    record(permit, threshold > 0 && clock.getAsLong() - start > threshold);
+                },
+                e -> record(permit, true));
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openDuration) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the generation the request is acquired in, to be passed to {@link #record}, or {@link #NO_PERMIT} if
+     * the request is not allowed
+     */
+    synchronized long tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return generation;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < openDuration) {
+                    return NO_PERMIT;
+                }
+                transition(State.HALF_OPEN);
+                trialInFlight = true;
+                return generation;
+            default:
+                if (trialInFlight) {
+                    return NO_PERMIT;
+                }
+                trialInFlight = true;
+                return generation;
+        }
+    }
+
+    synchronized void record(long permit, boolean failed) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (failed) {
+                open();
+            } else {
+                resetWindow();
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (calls == window.length) {
+            if (window[windowIndex]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[windowIndex] = failed;
+        if (failed) {
+            failures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+
+        if (calls >= Constants.CIRCUIT_BREAKER_MINIMUM_CALLS && failures * 2 >= calls) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = clock.getAsLong();
+        resetWindow();
+        transition(State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        calls = 0;
+        failures = 0;
+    }
+
+    private void transition(State newState) {
+        if (state != newState) {
+            Logger.getInstance().info("TypingDNA API circuit breaker for {} changed from {} to {}", apiUrl, state, newState);
+            state = newState;
+            generation++;
+        }
+    }
+
+    private static final class BreakerKey {
+        private final String apiUrl;
+        private final int openDurationSeconds;
+        private final int slowCallThresholdMillis;
+
+        private BreakerKey(String apiUrl, int openDurationSeconds, int slowCallThresholdMillis) {
+            this.apiUrl = apiUrl;
+            this.openDurationSeconds = openDurationSeconds;
+            this.slowCallThresholdMillis = slowCallThresholdMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BreakerKey)) {
+                return false;
+            }
+            BreakerKey other = (BreakerKey) o;
+            return openDurationSeconds == other.openDurationSeconds
+                    && slowCallThresholdMillis == other.slowCallThresholdMillis
+                    && Objects.equals(apiUrl, other.apiUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, openDurationSeconds, slowCallThresholdMillis);
+        }
+    }
+}
@@ -17,35 +17,48 @@
 
 package com.typingdna.api;
 
+import com.typingdna.api.model.APIResponse;
 import com.typingdna.api.model.VerifyResponse;
 import com.typingdna.util.JSONData;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
 
 import java.util.Map;
 
 public class DeveloperAPI extends TypingDNAAPI {
 
-    public DeveloperAPI(String apiUrl, String apiKey, String apiSecret, int requestTimeout) throws NodeProcessException {
+    public DeveloperAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout) throws NodeProcessException {
         super(apiUrl, apiKey, apiSecret, requestTimeout);
     }
 
-    @Override
-    public VerifyResponse verify(String username, String typingPattern, String requestIdentifier) {
-        logger.debug(String.format("In TypingDNADecisionNode: verify typing pattern (auto) username=%s", username));
-
-        VerifyResponse response;
+    public DeveloperAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout, int connectionPoolSize) throws NodeProcessException {
+        super(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize);
+    }
 
-        JSONData body;
-        try {
-            body = doAuto(username, typingPattern, requestIdentifier);
-        } catch (NodeProcessException e) {
-            logger.debug(String.format("In TypingDNADecisionNode: failed to verify (auto) username=%s reason=%s", username, e.getMessage()));
+    public DeveloperAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout, int connectionPoolSize, CircuitBreaker circuitBreaker) throws NodeProcessException {
+        super(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize, circuitBreaker);
+    }
 
-            response = new VerifyResponse(-1, false);
-            logger.error(String.format("Unknown error on POST /auto: %s", e.getMessage()));
+    @Override
+    public Promise<VerifyResponse, NeverThrowsException> verifyAsync(String username, String typingPattern, String requestIdentifier) {
+        logger.debug("In TypingDNADecisionNode: verify typing pattern (auto) username={}", username);
+
+        return doAuto(username, typingPattern, requestIdentifier)
+                .then(body -> parseVerifyResponse(body, username), e -> {
+                    if (e instanceof CircuitBreakerOpenException) {
+                        logger.debug("In TypingDNADecisionNode: circuit breaker open, typing pattern not verified (auto) username={}", username);
+                        return new VerifyResponse(APIResponse.CIRCUIT_OPEN, true);
+                    }
+                    logger.debug("In TypingDNADecisionNode: failed to verify (auto) username={} reason={}", username, e.getMessage());
+                    logger.error("Unknown error on POST /auto: {}", e.getMessage());
+
+                    return new VerifyResponse(-1, false);
+                });
+    }
 
-            return response;
-        }
+    private VerifyResponse parseVerifyResponse(JSONData body, String username) {
+        VerifyResponse response;
 
         int messageCode = body.getValue("message_code", -1);
         String action = body.getValue("action", "");
@@ -71,18 +84,17 @@ public class DeveloperAPI extends TypingDNAAPI {
             logError(body, response);
         }
 
-        logger.debug(String.format("In TypingDNADecisionNode: verify response (auto) username=%s match=%b enroll=%b", username, response.isMatch(),
-                response.isPatternEnrolled()));
+        logger.debug("In TypingDNADecisionNode: verify response (auto) username={} match={} enroll={}", username, response.isMatch(),
+                response.isPatternEnrolled());
 
         return response;
     }
 
-    private JSONData doAuto(String username, String typingPattern, String requestIdentifier) throws NodeProcessException {
-        String url = String.format("%s/auto/%s", apiUrl, username);
-
+    private Promise<JSONData, NodeProcessException> doAuto(String username, String typingPattern, String requestIdentifier) {
         Map<String, String> headers = getRequestHeaders();
         Map<String, String> data = getRequestBody(typingPattern, requestIdentifier);
 
-        return httpRequest.post(url, headers, data);
+        // /auto may save the pattern, so it is never sent twice
+        return send(AUTO, apiUrl -> httpRequest.postAsync(String.format("%s/auto/%s", apiUrl, username), headers, data), false);
     }
 }
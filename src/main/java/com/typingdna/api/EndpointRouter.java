@@ -0,0 +1,297 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.util.Constants;
+import com.typingdna.util.HelperFunctions;
+import com.typingdna.util.LatencyHistogram;
+import com.typingdna.util.Logger;
+import com.typingdna.util.Metrics;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.Promise;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static org.forgerock.util.promise.Promises.newExceptionPromise;
+import static org.forgerock.util.promise.Promises.newResultPromise;
+
+/**
+ * Routes the requests of all the nodes configured with the same, comma separated, list of API urls. Requests go to
+ * the healthy endpoint with the lowest expected latency, i.e. the moving average of its latency divided by the moving
+ * average of its success rate. An endpoint which cannot be connected to is skipped for
+ * {@link Constants#ENDPOINT_RETRY_DELAY} seconds, doubled after every consecutive connect failure, and the request is
+ * sent to the next endpoint. Other failures are not retried, as the request may already have been processed. A router
+ * is leased by every API client using its urls, and dropped with its gauges once the last of them is closed.
+ */
+public final class EndpointRouter {
+
+    private static final Map<String, EndpointRouter> routers = new HashMap<>();
+
+    private final List<Endpoint> endpoints;
+    private final LongSupplier clock;
+    private String apiUrls;
+    private int leases = 0;
+
+    EndpointRouter(List<String> urls, LongSupplier clock) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String url : urls) {
+            endpoints.add(new Endpoint(url));
+        }
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.clock = clock;
+    }
+
+    /**
+     * Leases the router of the given urls, to be released with {@link #release} when the client using it is closed.
+     */
+    public static synchronized EndpointRouter forUrls(String apiUrls) {
+        EndpointRouter router = routers.computeIfAbsent(apiUrls, key -> {
+            EndpointRouter created = new EndpointRouter(parseUrls(key), System::nanoTime);
+            created.apiUrls = key;
+            created.registerGauges();
+            return created;
+        });
+        router.leases++;
+
+        return router;
+    }
+
+    public static synchronized void release(EndpointRouter router) {
+        if (router.apiUrls == null || routers.get(router.apiUrls) != router || --router.leases > 0) {
+            return;
+        }
+
+        routers.remove(router.apiUrls);
+        for (Endpoint endpoint : router.endpoints) {
+            Metrics.getInstance().unregisterGauges(String.format("endpoint %s ", endpoint.url));
+        }
+        // another router may share some of the urls
+        routers.values().forEach(EndpointRouter::registerGauges);
+    }
+
+    public static synchronized int size() {
+        return routers.size();
+    }
+
+    public static synchronized void shutdown() {
+        routers.clear();
+        Metrics.getInstance().unregisterGauges("endpoint ");
+    }
+
+    private void registerGauges() {
+        if (endpoints.size() > 1) {
+            for (Endpoint endpoint : endpoints) {
+                Metrics.getInstance().registerGauge(String.format("endpoint %s latency", endpoint.url), endpoint::getLatency);
+                Metrics.getInstance().registerGauge(String.format("endpoint %s healthy", endpoint.url), () -> endpoint.isHealthy() ? 1 : 0);
+            }
+        }
+    }
+
+    static List<String> parseUrls(String apiUrls) {
+        List<String> urls = new ArrayList<>();
+        if (apiUrls != null) {
+            for (String url : apiUrls.split(",")) {
+                String trimmedUrl = HelperFunctions.trimUrl(url);
+                if (!trimmedUrl.isEmpty() && !urls.contains(trimmedUrl)) {
+                    urls.add(trimmedUrl);
+                }
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(HelperFunctions.trimUrl(apiUrls == null ? "" : apiUrls));
+        }
+
+        return urls;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Sends the request to the best endpoint, and to the next ones while the endpoints cannot be connected to.
+     *
+     * @param request creates the request for the given base url
+     */
+    public <V> Promise<V, NodeProcessException> send(Function<String, Promise<V, NodeProcessException>> request) {
+        if (endpoints.size() == 1) {
+            return request.apply(endpoints.get(0).url);
+        }
+
+        return send(candidates(), 0, request);
+    }
+
+    /**
+     * @return the latencies of the given call to the endpoint, including those which completed after the caller
+     * stopped waiting for them
+     */
+    public LatencyHistogram getLatencyHistogram(String url, String call) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.url.equals(url)) {
+                return endpoint.histograms.computeIfAbsent(call, key -> new LatencyHistogram());
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown endpoint %s", url));
+    }
+
+    List<Endpoint> candidates() {
+        long now = clock.getAsLong();
+        List<Endpoint> candidates = new ArrayList<>(endpoints);
+        Map<Endpoint, Rank> ranks = new HashMap<>();
+        for (Endpoint endpoint : candidates) {
+            ranks.put(endpoint, endpoint.rank(now));
+        }
+        candidates.sort(Comparator.comparing(ranks::get, Rank.ORDER));
+
+        return candidates;
+    }
+
+    private <V> Promise<V, NodeProcessException> send(List<Endpoint> candidates, int index, Function<String, Promise<V, NodeProcessException>> request) {
+        Endpoint endpoint = candidates.get(index);
+        long start = clock.getAsLong();
+
+        return request.apply(endpoint.url).thenAsync(result -> {
+            endpoint.recordSuccess(clock.getAsLong() - start);
+            return newResultPromise(result);
+        }, e -> {
+            long now = clock.getAsLong();
+            if (!isConnectFailure(e)) {
+                endpoint.recordFailure(now - start);
+                return newExceptionPromise(e);
+            }
+
+            endpoint.recordConnectFailure(now);
+            if (index + 1 >= candidates.size()) {
+                return newExceptionPromise(e);
+            }
+
+            Logger.getInstance().info("Failed to connect to the TypingDNA API at {}, trying {}", endpoint.url, candidates.get(index + 1).url);
+            return send(candidates, index + 1, request);
+        });
+    }
+
+    private static boolean isConnectFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    public static final class Endpoint {
+        private final String url;
+        private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+        private boolean measured = false;
+        private double latency = 0;
+        private double successRate = 1;
+        private int connectFailures = 0;
+        private long retryAt = 0;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the moving average of the latency of the endpoint, in ms
+         */
+        public synchronized long getLatency() {
+            return TimeUnit.NANOSECONDS.toMillis((long) latency);
+        }
+
+        public synchronized boolean isHealthy() {
+            return connectFailures == 0;
+        }
+
+        private synchronized Rank rank(long now) {
+            if (connectFailures > 0 && now - retryAt < 0) {
+                return new Rank(false, 0, retryAt - now);
+            }
+            return new Rank(true, latency / Math.max(successRate, 0.01), 0);
+        }
+
+        private synchronized void recordSuccess(long elapsed) {
+            recordLatency(elapsed);
+            successRate = average(successRate, 1);
+            connectFailures = 0;
+        }
+
+        private synchronized void recordFailure(long elapsed) {
+            recordLatency(elapsed);
+            successRate = average(successRate, 0);
+            connectFailures = 0;
+        }
+
+        private synchronized void recordConnectFailure(long now) {
+            long delay = TimeUnit.SECONDS.toNanos(Math.min(
+                    (long) Constants.ENDPOINT_RETRY_DELAY << Math.min(connectFailures, 16), Constants.MAX_ENDPOINT_RETRY_DELAY));
+            if (connectFailures == 0) {
+                Logger.getInstance().info("TypingDNA API endpoint {} is unreachable", url);
+            }
+            connectFailures++;
+            retryAt = now + delay;
+        }
+
+        private void recordLatency(long elapsed) {
+            latency = measured ? average(latency, elapsed) : elapsed;
+            measured = true;
+        }
+
+        private static double average(double average, double sample) {
+            return average + Constants.ENDPOINT_EWMA_WEIGHT * (sample - average);
+        }
+    }
+
+    /**
+     * Reachable endpoints go first, the fastest first, then unreachable endpoints, the first one to be retried first.
+     */
+    private static final class Rank {
+        private static final Comparator<Rank> ORDER = Comparator.comparing((Rank rank) -> !rank.reachable)
+                .thenComparingDouble(rank -> rank.score)
+                .thenComparingLong(rank -> rank.retryIn);
+
+        private final boolean reachable;
+        private final double score;
+        private final long retryIn;
+
+        private Rank(boolean reachable, double score, long retryIn) {
+            this.reachable = reachable;
+            this.score = score;
+            this.retryIn = retryIn;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.api.model.PatternType;
+import com.typingdna.util.Constants;
+import com.typingdna.util.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, in-process cache of the enrolled pattern counts returned by GET /user. Entries expire after the TTL they
+ * were written with, are updated by the Decision node when it enrolls a pattern and dropped when a profile is reset.
+ */
+public final class PatternCountCache {
+
+    private static final PatternCountCache instance = new PatternCountCache(Constants.PATTERN_COUNT_CACHE_SIZE, System::nanoTime);
+
+    static {
+        Metrics.getInstance().registerGauge("patternCountCache hits", instance::getHits);
+        Metrics.getInstance().registerGauge("patternCountCache misses", instance::getMisses);
+        Metrics.getInstance().registerGauge("patternCountCache size", instance::size);
+    }
+
+    private final Map<Key, Entry> entries;
+    private final LongSupplier clock;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    PatternCountCache(int maxSize, LongSupplier clock) {
+        this.clock = clock;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static PatternCountCache getInstance() {
+        return instance;
+    }
+
+    public Integer get(Key key) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && clock.getAsLong() - entry.expiresAt >= 0) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.patternCount;
+    }
+
+    public void put(Key key, int patternCount, int ttlSeconds) {
+        if (ttlSeconds <= 0 || patternCount < 0 || patternCount == Integer.MAX_VALUE) {
+            return;
+        }
+
+        Entry entry = new Entry(patternCount, clock.getAsLong() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    public void invalidate(String apiKey, String username) {
+        synchronized (entries) {
+            entries.keySet().removeIf(key -> Objects.equals(key.apiKey, apiKey) && Objects.equals(key.username, username));
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public static final class Key {
+        private final String apiKey;
+        private final String username;
+        private final PatternType patternType;
+        private final String textId;
+        private final DeviceType deviceType;
+
+        public Key(String apiKey, String username, PatternType patternType, String textId, DeviceType deviceType) {
+            this.apiKey = apiKey;
+            this.username = username;
+            this.patternType = patternType;
+            this.textId = textId;
+            this.deviceType = deviceType;
+        }
+
+        public PatternType getPatternType() {
+            return patternType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return patternType == other.patternType
+                    && deviceType == other.deviceType
+                    && Objects.equals(apiKey, other.apiKey)
+                    && Objects.equals(username, other.username)
+                    && Objects.equals(textId, other.textId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiKey, username, patternType, textId, deviceType);
+        }
+    }
+
+    private static final class Entry {
+        private final int patternCount;
+        private final long expiresAt;
+
+        private Entry(int patternCount, long expiresAt) {
+            this.patternCount = patternCount;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
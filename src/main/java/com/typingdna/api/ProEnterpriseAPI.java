@@ -17,37 +17,51 @@
 
 package com.typingdna.api;
 
+import com.typingdna.api.model.APIResponse;
 import com.typingdna.api.model.VerifyResponse;
 import com.typingdna.util.JSONData;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class ProEnterpriseAPI extends TypingDNAAPI {
 
-    public ProEnterpriseAPI(String apiUrl, String apiKey, String apiSecret, int requestTimeout) throws NodeProcessException {
+    public ProEnterpriseAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout) throws NodeProcessException {
         super(apiUrl, apiKey, apiSecret, requestTimeout);
     }
 
-    @Override
-    public VerifyResponse verify(String username, String typingPattern, String requestIdentifier) {
-        logger.debug(String.format("In TypingDNADecisionNode: verify typing pattern username=%s", username));
-
-        VerifyResponse response;
+    public ProEnterpriseAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout, int connectionPoolSize) throws NodeProcessException {
+        super(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize);
+    }
 
-        JSONData body;
-        try {
-            body = doVerify(username, typingPattern, requestIdentifier);
-        } catch (NodeProcessException e) {
-            logger.debug(String.format("In TypingDNADecisionNode: failed to verify username=%s reason=%s", username, e.getMessage()));
+    public ProEnterpriseAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout, int connectionPoolSize, CircuitBreaker circuitBreaker) throws NodeProcessException {
+        super(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize, circuitBreaker);
+    }
 
-            response = new VerifyResponse(-1, false);
-            logger.error(String.format("Unknown error on POST /verify: %s", e.getMessage()));
+    @Override
+    public Promise<VerifyResponse, NeverThrowsException> verifyAsync(String username, String typingPattern, String requestIdentifier) {
+        logger.debug("In TypingDNADecisionNode: verify typing pattern username={}", username);
+
+        return doVerify(username, typingPattern, requestIdentifier)
+                .then(body -> parseVerifyResponse(body, username), e -> {
+                    if (e instanceof CircuitBreakerOpenException) {
+                        logger.debug("In TypingDNADecisionNode: circuit breaker open, typing pattern not verified username={}", username);
+                        return new VerifyResponse(APIResponse.CIRCUIT_OPEN, true);
+                    }
+                    logger.debug("In TypingDNADecisionNode: failed to verify username={} reason={}", username, e.getMessage());
+                    logger.error("Unknown error on POST /verify: {}", e.getMessage());
+
+                    return new VerifyResponse(-1, false);
+                });
+    }
 
-            return response;
-        }
+    private VerifyResponse parseVerifyResponse(JSONData body, String username) {
+        VerifyResponse response;
 
         List<Integer> permanentErrors = new ArrayList<>(Arrays.asList(2, 3, 4, 32, 33, 53));
 
@@ -75,15 +89,16 @@ public class ProEnterpriseAPI extends TypingDNAAPI {
             logError(body, response);
         }
 
-        logger.debug(String.format("In TypingDNADecisionNode: verify response username=%s match=%b enrolled=%b", username, response.isMatch(),
-                response.isPatternEnrolled()));
+        logger.debug("In TypingDNADecisionNode: verify response username={} match={} enrolled={}", username, response.isMatch(),
+                response.isPatternEnrolled());
 
         return response;
     }
 
-    private JSONData doVerify(String username, String typingPattern, String requestIdentifier) throws NodeProcessException {
-        String uri = String.format("%s/verify/%s", apiUrl, username);
+    private Promise<JSONData, NodeProcessException> doVerify(String username, String typingPattern, String requestIdentifier) {
+        Map<String, String> headers = getRequestHeaders();
+        Map<String, String> data = getRequestBody(typingPattern, requestIdentifier);
 
-        return httpRequest.post(uri, getRequestHeaders(), getRequestBody(typingPattern, requestIdentifier));
+        return send(VERIFY, apiUrl -> httpRequest.postAsync(String.format("%s/verify/%s", apiUrl, username), headers, data), true);
     }
 }
\ No newline at end of file
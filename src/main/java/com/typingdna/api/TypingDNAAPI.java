@@ -18,47 +18,140 @@
 package com.typingdna.api;
 
 import com.typingdna.api.model.*;
+import com.typingdna.util.Constants;
 import com.typingdna.util.HTTPRequest;
+import com.typingdna.util.HTTPRequestPool;
+import com.typingdna.util.HTTPStatusException;
 import com.typingdna.util.JSONData;
+import com.typingdna.util.LatencyHistogram;
 import com.typingdna.util.Logger;
+import com.typingdna.util.Metrics;
+import com.typingdna.util.RequestScheduler;
+import com.typingdna.util.Span;
+import com.typingdna.util.Tracer;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
 import org.forgerock.util.Strings;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public abstract class TypingDNAAPI {
 
-    protected final String apiUrl;
+    protected static final String CHECK_USER = "GET /user";
+    protected static final String DELETE_USER = "DELETE /user";
+    protected static final String AUTO = "POST /auto";
+    protected static final String VERIFY = "POST /verify";
+
+    protected final EndpointRouter endpoints;
     protected final String apiKey;
-    protected final String apiSecret;
     protected final HTTPRequest httpRequest;
+    protected final CircuitBreaker circuitBreaker;
+    protected final int requestTimeout;
+    private final Map<String, String> requestHeaders;
     protected final Logger logger = Logger.getInstance();
+    private int adaptiveTimeoutMultiplier = 0;
+    private int hedgePercentile = 0;
+
+    public TypingDNAAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout) throws NodeProcessException {
+        this(apiUrl, apiKey, apiSecret, requestTimeout, Constants.DEFAULT_CONNECTION_POOL_SIZE);
+    }
 
-    public TypingDNAAPI(String apiUrl, String apiKey, String apiSecret, int requestTimeout) throws NodeProcessException {
-        this.apiUrl = apiUrl;
+    public TypingDNAAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout, int connectionPoolSize) throws NodeProcessException {
+        this(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize, CircuitBreaker.disabled());
+    }
+
+    public TypingDNAAPI(String apiUrl, String apiKey, char[] apiSecret, int requestTimeout, int connectionPoolSize, CircuitBreaker circuitBreaker) throws NodeProcessException {
+        this.endpoints = EndpointRouter.forUrls(apiUrl);
         this.apiKey = apiKey;
-        this.apiSecret = apiSecret;
-        this.httpRequest = new HTTPRequest(requestTimeout);
+        this.requestHeaders = createRequestHeaders(apiKey, apiSecret);
+        this.httpRequest = HTTPRequestPool.acquire(apiUrl, requestTimeout, connectionPoolSize);
+        this.circuitBreaker = circuitBreaker;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Stop waiting for a response after {@code multiplier} times the 99th percentile of the recent latencies of the
+     * endpoint, instead of after the request timeout. 0 disables the adaptive timeout.
+     */
+    public TypingDNAAPI setAdaptiveTimeoutMultiplier(int multiplier) {
+        this.adaptiveTimeoutMultiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * Send the verification of a typing pattern a second time if the first request has not completed after the given
+     * percentile of the recent latencies of the endpoint. 0 disables hedging.
+     */
+    public TypingDNAAPI setHedgePercentile(int percentile) {
+        this.hedgePercentile = percentile;
+        return this;
     }
 
     public CheckUserResponse checkUser(String username, PatternType patternType, String textId, DeviceType deviceType, String requestIdentifier) {
-        logger.debug(String.format("In TypingDNADecisionNode: check user username=%s deviceType=%s", username, deviceType.name()));
+        return checkUserAsync(username, patternType, textId, deviceType, requestIdentifier).getOrThrowUninterruptibly();
+    }
 
-        CheckUserResponse response;
+    public DeleteUserResponse deleteUser(String username, String requestIdentifier) {
+        return deleteUserAsync(username, requestIdentifier).getOrThrowUninterruptibly();
+    }
 
-        JSONData body;
-        try {
-            body = doCheckUser(username, patternType, textId, requestIdentifier);
-        } catch (NodeProcessException e) {
-            logger.debug(String.format("In TypingDNADecisionNode: failed to check user username=%s reason=%s", username, e.getMessage()));
+    public VerifyResponse verify(String username, String typingPattern, String requestIdentifier) {
+        return verifyAsync(username, typingPattern, requestIdentifier).getOrThrowUninterruptibly();
+    }
 
-            response = new CheckUserResponse(-1, false);
-            logger.error(String.format("Unknown error on GET /user: %s", e.getMessage()));
+    public Promise<CheckUserResponse, NeverThrowsException> checkUserAsync(String username, PatternType patternType, String textId, DeviceType deviceType, String requestIdentifier) {
+        logger.debug("In TypingDNADecisionNode: check user username={} deviceType={}", username, deviceType.name());
 
-            return response;
-        }
+        return doCheckUser(username, patternType, textId, requestIdentifier)
+                .then(body -> parseCheckUserResponse(body, username, deviceType), e -> {
+                    if (e instanceof CircuitBreakerOpenException) {
+                        logger.debug("In TypingDNADecisionNode: circuit breaker open, user not checked username={}", username);
+                        return new CheckUserResponse(APIResponse.CIRCUIT_OPEN, true);
+                    }
+                    logger.debug("In TypingDNADecisionNode: failed to check user username={} reason={}", username, e.getMessage());
+                    logger.error("Unknown error on GET /user: {}", e.getMessage());
+
+                    return new CheckUserResponse(-1, false);
+                });
+    }
+
+    public Promise<DeleteUserResponse, NeverThrowsException> deleteUserAsync(String username, String requestIdentifier) {
+        logger.debug("In TypingDNAResetProfile: delete user username={}", username);
+
+        return doDeleteUser(username, requestIdentifier)
+                .then(this::parseDeleteUserResponse, e -> {
+                    if (e instanceof CircuitBreakerOpenException) {
+                        logger.debug("In TypingDNAResetProfile: circuit breaker open, user not deleted username={}", username);
+                        return new DeleteUserResponse(APIResponse.CIRCUIT_OPEN, true);
+                    }
+                    logger.debug("In TypingDNAResetProfile: failed to delete user username={} reason={}", username, e.getMessage());
+                    logger.error("Unknown error on DELETE /user: {}", e.getMessage());
+
+                    return new DeleteUserResponse(-1, false);
+                });
+    }
+
+    public abstract Promise<VerifyResponse, NeverThrowsException> verifyAsync(String username, String typingPattern, String requestIdentifier);
+
+    public void close() {
+        HTTPRequestPool.release(this.httpRequest);
+        EndpointRouter.release(this.endpoints);
+    }
+
+    private CheckUserResponse parseCheckUserResponse(JSONData body, String username, DeviceType deviceType) {
+        CheckUserResponse response;
 
         int messageCode = body.getValue("message_code", -1);
         if (messageCode == 32 || messageCode == 33) {
@@ -71,7 +164,7 @@ public abstract class TypingDNAAPI {
             response = new CheckUserResponse();
             response.setPatternCount(patternCount);
 
-            logger.debug(String.format("In TypingDNADecisionNode: pattern count=%d username=%s", patternCount, username));
+            logger.debug("In TypingDNADecisionNode: pattern count={} username={}", patternCount, username);
         } else {
             response = new CheckUserResponse(messageCode, true);
         }
@@ -83,23 +176,9 @@ public abstract class TypingDNAAPI {
         return response;
     }
 
-    public DeleteUserResponse deleteUser(String username, String requestIdentifier) {
-        logger.debug(String.format("In TypingDNAResetProfile: delete user username=%s", username));
-
+    private DeleteUserResponse parseDeleteUserResponse(JSONData body) {
         DeleteUserResponse response;
 
-        JSONData body;
-        try {
-            body = doDeleteUser(username, requestIdentifier);
-        } catch (NodeProcessException e) {
-            logger.debug(String.format("In TypingDNAResetProfile: failed to delete user username=%s reason=%s", username, e.getMessage()));
-
-            response = new DeleteUserResponse(-1, false);
-            logger.error(String.format("Unknown error on DELETE /user: %s", e.getMessage()));
-
-            return response;
-        }
-
         int messageCode = body.getValue("message_code", -1);
         if (messageCode == 32 || messageCode == 33) {
             response = new DeleteUserResponse(messageCode, false);
@@ -116,34 +195,97 @@ public abstract class TypingDNAAPI {
         return response;
     }
 
-    public abstract VerifyResponse verify(String username, String typingPattern, String requestIdentifier);
+    private Promise<JSONData, NodeProcessException> doCheckUser(String username, PatternType patternType, String textId, String requestIdentifier) {
+        StringBuilder query = new StringBuilder(String.format("?type=%d&custom_field=%s", patternType.getType(), requestIdentifier));
+        if (!Strings.isNullOrEmpty(textId)) {
+            query.append(String.format("&textid=%s", textId));
+        }
 
-    public void close() {
-        this.httpRequest.close();
+        return send(CHECK_USER, apiUrl -> httpRequest.getAsync(String.format("%s/user/%s%s", apiUrl, username, query), getRequestHeaders()), false);
     }
 
-    private JSONData doCheckUser(String username, PatternType patternType, String textId, String requestIdentifier) throws NodeProcessException {
-        StringBuilder uri = new StringBuilder(String.format("%s/user/%s?type=%d&custom_field=%s", apiUrl, username,
-                patternType.getType(), requestIdentifier));
-        if (!Strings.isNullOrEmpty(textId)) {
-            uri.append(String.format("&textid=%s", textId));
-        }
+    private Promise<JSONData, NodeProcessException> doDeleteUser(String username, String requestIdentifier) {
+        return send(DELETE_USER, apiUrl -> httpRequest.deleteAsync(String.format("%s/user/%s?custom_field=%s", apiUrl, username, requestIdentifier), getRequestHeaders()), false);
+    }
 
-        return httpRequest.get(uri.toString(), getRequestHeaders());
+    /**
+     * @param call    the name of the call in the metrics
+     * @param request creates the request for the given API url; it is called again with another url when the endpoint
+     *                cannot be connected to
+     */
+    protected Promise<JSONData, NodeProcessException> send(String call, Function<String, Promise<JSONData, NodeProcessException>> request, boolean hedged) {
+        Span span = Tracer.getInstance().startDetachedSpan(call);
+        Metrics metrics = Metrics.getInstance();
+        long start = System.nanoTime();
+        AtomicLong timeout = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(requestTimeout));
+
+        // a call is slow once it took more than half of the timeout of the endpoint which answered it
+        return circuitBreaker.call(() -> endpoints.send(apiUrl -> sendTo(apiUrl, call, request, hedged, span, timeout)),
+                () -> timeout.get() / 2)
+                .thenOnResultOrException(
+                        body -> {
+                            metrics.recordCall(call, System.nanoTime() - start,
+                                    Metrics.Status.fromHttpStatus(body.getStatus()), body.getValue("message_code", -1));
+                            span.end();
+                        },
+                        e -> {
+                            metrics.recordCall(call, System.nanoTime() - start, getErrorStatus(e), -1);
+                            span.setError(e).end();
+                        });
     }
 
-    private JSONData doDeleteUser(String username, String requestIdentifier) throws NodeProcessException {
-        return httpRequest.delete(String.format("%s/user/%s?custom_field=%s", apiUrl, username, requestIdentifier), getRequestHeaders());
+    /**
+     * Sends the request to one endpoint. The hedge delay and the adaptive timeout come from the latencies of the same
+     * call to the same endpoint. The timeout applied is set in {@code effectiveTimeout}, in ns.
+     */
+    private Promise<JSONData, NodeProcessException> sendTo(String apiUrl, String call, Function<String, Promise<JSONData, NodeProcessException>> request, boolean hedged, Span span, AtomicLong effectiveTimeout) {
+        LatencyHistogram latency = endpoints.getLatencyHistogram(apiUrl, call);
+        Supplier<Promise<JSONData, NodeProcessException>> timed = () -> Tracer.getInstance().withSpan(span, () -> {
+            long start = System.nanoTime();
+            return request.apply(apiUrl).thenAlways(() -> latency.record(System.nanoTime() - start));
+        });
+
+        long hedgeDelay = hedged && hedgePercentile > 0 ? latency.percentile(hedgePercentile) : -1;
+        Promise<JSONData, NodeProcessException> promise = hedgeDelay >= 0 ? RequestScheduler.hedge(timed, hedgeDelay) : timed.get();
+
+        long timeout = adaptiveTimeoutMultiplier > 0 ? latency.percentile(99) * adaptiveTimeoutMultiplier : -1;
+        if (timeout < 0 || timeout >= requestTimeout) {
+            effectiveTimeout.set(TimeUnit.MILLISECONDS.toNanos(requestTimeout));
+            return promise;
+        }
+        timeout = Math.max(timeout, Constants.MIN_ADAPTIVE_TIMEOUT);
+        effectiveTimeout.set(TimeUnit.MILLISECONDS.toNanos(timeout));
+        return RequestScheduler.withTimeout(promise, timeout);
     }
 
-    private String getAuthString() {
-        StringBuilder authString = new StringBuilder();
-        authString.append("Basic ");
+    private static Metrics.Status getErrorStatus(NodeProcessException e) {
+        if (e instanceof CircuitBreakerOpenException) {
+            return Metrics.Status.REJECTED;
+        }
+        if (e instanceof HTTPStatusException) {
+            return Metrics.Status.fromHttpStatus(((HTTPStatusException) e).getStatus());
+        }
+        return Metrics.Status.ERROR;
+    }
 
-        Base64.Encoder encoder = Base64.getEncoder();
-        authString.append(encoder.encodeToString(String.format("%s:%s", apiKey, apiSecret).getBytes()));
+    /**
+     * Builds the Basic credentials without creating a String holding the secret. The intermediate buffers are
+     * cleared once encoded.
+     */
+    private static String getAuthString(String apiKey, char[] apiSecret) {
+        CharBuffer credentials = CharBuffer.allocate(apiKey.length() + 1 + apiSecret.length);
+        credentials.put(apiKey).put(':').put(apiSecret).flip();
+        ByteBuffer bytes = Charset.defaultCharset().encode(credentials);
+        byte[] encoded = new byte[bytes.remaining()];
+        bytes.get(encoded);
 
-        return authString.toString();
+        try {
+            return "Basic " + Base64.getEncoder().encodeToString(encoded);
+        } finally {
+            Arrays.fill(credentials.array(), '\0');
+            Arrays.fill(bytes.array(), (byte) 0);
+            Arrays.fill(encoded, (byte) 0);
+        }
     }
 
     protected void logError(JSONData body, APIResponse response) {
@@ -153,17 +295,24 @@ public abstract class TypingDNAAPI {
             String name = body.getValue("name", "");
             String message = body.getValue("message", "");
 
-            logger.error(String.format("TypingDNA Authentication API %s error: code=%d name=%s message=%s", type, code, name, message));
+            logger.error("TypingDNA Authentication API {} error: code={} name={} message={}", type, code, name, message);
         }
     }
 
+    /**
+     * @return the headers sent with every request, computed once per instance
+     */
     protected Map<String, String> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    private static Map<String, String> createRequestHeaders(String apiKey, char[] apiSecret) {
         Map<String, String> headers = new HashMap<>();
         headers.put("Accept", "application/json");
-        headers.put("Authorization", getAuthString());
+        headers.put("Authorization", getAuthString(apiKey, apiSecret));
         headers.put("tdna-advanced", "1");
 
-        return headers;
+        return Collections.unmodifiableMap(headers);
     }
 
     protected Map<String, String> getRequestBody(String typingPattern, String customField) {
@@ -0,0 +1,279 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.util.ConfigAdapter;
+import com.typingdna.util.Constants;
+import com.typingdna.util.HelperFunctions;
+import com.typingdna.util.Logger;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Plugin scoped registry of API clients. One client is built for every distinct node configuration and shared by all
+ * the nodes using it. A client is closed as soon as no node uses its configuration anymore (i.e. the configuration of
+ * the nodes changed) and no request is in flight, once it has not been used for
+ * {@link Constants#CONNECTION_POOL_IDLE_TIMEOUT} ms, or when the plugin shuts down.
+ */
+public final class TypingDNAAPIRegistry {
+
+    private static final Map<Key, Entry> entries = new HashMap<>();
+    private static final Map<String, Key> nodes = new HashMap<>();
+    private static final Map<String, SecretHash> secretHashes = new HashMap<>();
+
+    private TypingDNAAPIRegistry() {
+    }
+
+    public static synchronized TypingDNAAPI acquire(String nodeId, Key key) throws NodeProcessException {
+        long now = System.currentTimeMillis();
+
+        Key previousKey = nodes.put(nodeId, key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            Entry previous = entries.get(previousKey);
+            if (previous != null) {
+                previous.nodeIds.remove(nodeId);
+            }
+        }
+
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Logger.getInstance().debug("Creating TypingDNA API client apiUrl={} configuration={}", key.apiUrl, key.configuration);
+
+            entry = new Entry(key.create());
+            entries.put(key, entry);
+        }
+
+        entry.nodeIds.add(nodeId);
+        entry.leases++;
+        entry.lastUsed = now;
+        evict(now);
+
+        return entry.api;
+    }
+
+    public static synchronized void release(TypingDNAAPI api) {
+        long now = System.currentTimeMillis();
+
+        for (Entry entry : entries.values()) {
+            if (entry.api == api) {
+                entry.leases = Math.max(0, entry.leases - 1);
+                entry.lastUsed = now;
+                break;
+            }
+        }
+
+        evict(now);
+    }
+
+    public static synchronized int size() {
+        return entries.size();
+    }
+
+    public static synchronized void shutdown() {
+        entries.values().forEach(entry -> entry.api.close());
+        entries.clear();
+        nodes.clear();
+        synchronized (secretHashes) {
+            secretHashes.clear();
+        }
+    }
+
+    static synchronized void evict(long now) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> mapEntry = iterator.next();
+            Entry entry = mapEntry.getValue();
+            if (entry.leases == 0 && (entry.nodeIds.isEmpty() || now - entry.lastUsed > Constants.CONNECTION_POOL_IDLE_TIMEOUT)) {
+                entry.api.close();
+                entry.nodeIds.forEach(nodeId -> {
+                    if (nodes.remove(nodeId, mapEntry.getKey())) {
+                        synchronized (secretHashes) {
+                            secretHashes.remove(nodeId);
+                        }
+                    }
+                });
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The fingerprint of the secret of a node configuration. It is computed once for every configuration instance of
+     * a node rather than on every authentication, as AM only builds a new instance when the configuration changes.
+     * The configuration is only weakly referenced, and the fingerprint is dropped with the client of the node.
+     */
+    private static String secretHash(String nodeId, ConfigAdapter config, char[] apiSecret) {
+        synchronized (secretHashes) {
+            SecretHash secretHash = secretHashes.get(nodeId);
+            if (secretHash != null && secretHash.config.get() == config) {
+                return secretHash.hash;
+            }
+        }
+
+        String hash = Key.hash(apiSecret);
+        synchronized (secretHashes) {
+            secretHashes.put(nodeId, new SecretHash(config, hash));
+        }
+        return hash;
+    }
+
+    private static final class SecretHash {
+        private final WeakReference<ConfigAdapter> config;
+        private final String hash;
+
+        private SecretHash(ConfigAdapter config, String hash) {
+            this.config = new WeakReference<>(config);
+            this.hash = hash;
+        }
+    }
+
+    private static final class Entry {
+        private final TypingDNAAPI api;
+        private final Set<String> nodeIds = new HashSet<>();
+        private int leases = 0;
+        private long lastUsed;
+
+        private Entry(TypingDNAAPI api) {
+            this.api = api;
+        }
+    }
+
+    /**
+     * The node configuration a client is built from. Keys are compared on a SHA-256 fingerprint of the secret; the
+     * secret itself is only referenced until the client is built.
+     */
+    public static final class Key {
+        private final ConfigAdapter.Configuration configuration;
+        private final String apiUrl;
+        private final String apiKey;
+        private final String apiSecretHash;
+        private final int requestTimeout;
+        private final int connectionPoolSize;
+        private final int circuitBreakerOpenDuration;
+        private final int adaptiveTimeoutMultiplier;
+        private final int hedgePercentile;
+        private char[] apiSecret;
+
+        Key(ConfigAdapter.Configuration configuration, String apiUrl, String apiKey, char[] apiSecret, int requestTimeout,
+            int connectionPoolSize, int circuitBreakerOpenDuration, int adaptiveTimeoutMultiplier, int hedgePercentile) {
+            this(configuration, apiUrl, apiKey, apiSecret, hash(apiSecret), requestTimeout, connectionPoolSize,
+                    circuitBreakerOpenDuration, adaptiveTimeoutMultiplier, hedgePercentile);
+        }
+
+        private Key(ConfigAdapter.Configuration configuration, String apiUrl, String apiKey, char[] apiSecret,
+                    String apiSecretHash, int requestTimeout, int connectionPoolSize, int circuitBreakerOpenDuration,
+                    int adaptiveTimeoutMultiplier, int hedgePercentile) {
+            this.configuration = configuration;
+            this.apiUrl = HelperFunctions.trimUrl(apiUrl);
+            this.apiKey = apiKey;
+            this.apiSecret = apiSecret;
+            this.apiSecretHash = apiSecretHash;
+            this.requestTimeout = requestTimeout;
+            this.connectionPoolSize = connectionPoolSize;
+            this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+            this.adaptiveTimeoutMultiplier = adaptiveTimeoutMultiplier;
+            this.hedgePercentile = hedgePercentile;
+        }
+
+        public static Key forDecisionNode(String nodeId, ConfigAdapter config) {
+            char[] apiSecret = config.apiSecret();
+            return new Key(config.authAPIConfiguration(), config.apiUrl(), config.apiKey(), apiSecret,
+                    secretHash(nodeId, config, apiSecret), config.requestTimeout(), config.connectionPoolSize(),
+                    config.circuitBreakerOpenDuration(), config.adaptiveTimeoutMultiplier(), config.hedgePercentile());
+        }
+
+        public static Key forResetProfile(String nodeId, ConfigAdapter config) {
+            char[] apiSecret = config.apiSecret();
+            return new Key(ConfigAdapter.Configuration.Basic, config.apiUrl(), config.apiKey(), apiSecret,
+                    secretHash(nodeId, config, apiSecret), config.requestTimeout(), config.connectionPoolSize(),
+                    config.circuitBreakerOpenDuration(), 0, 0);
+        }
+
+        private TypingDNAAPI create() throws NodeProcessException {
+            // the slow call threshold follows the effective timeout of each request, see TypingDNAAPI#send
+            CircuitBreaker circuitBreaker = CircuitBreaker.forEndpoint(apiUrl, circuitBreakerOpenDuration, 0);
+
+            TypingDNAAPI api;
+            if (configuration == ConfigAdapter.Configuration.Basic) {
+                api = new DeveloperAPI(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize, circuitBreaker);
+            } else {
+                api = new ProEnterpriseAPI(apiUrl, apiKey, apiSecret, requestTimeout, connectionPoolSize, circuitBreaker);
+            }
+            apiSecret = null;
+
+            return api.setAdaptiveTimeoutMultiplier(adaptiveTimeoutMultiplier)
+                    .setHedgePercentile(hedgePercentile);
+        }
+
+        private static String hash(char[] secret) {
+            if (secret == null) {
+                return "";
+            }
+
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(secret));
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(bytes.duplicate());
+                return HelperFunctions.bytesToHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                return "";
+            } finally {
+                Arrays.fill(bytes.array(), (byte) 0);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return configuration == other.configuration
+                    && requestTimeout == other.requestTimeout
+                    && connectionPoolSize == other.connectionPoolSize
+                    && circuitBreakerOpenDuration == other.circuitBreakerOpenDuration
+                    && adaptiveTimeoutMultiplier == other.adaptiveTimeoutMultiplier
+                    && hedgePercentile == other.hedgePercentile
+                    && Objects.equals(apiUrl, other.apiUrl)
+                    && Objects.equals(apiKey, other.apiKey)
+                    && Objects.equals(apiSecretHash, other.apiSecretHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(configuration, apiUrl, apiKey, apiSecretHash, requestTimeout, connectionPoolSize,
+                    circuitBreakerOpenDuration, adaptiveTimeoutMultiplier, hedgePercentile);
+        }
+    }
+}
@@ -19,6 +19,11 @@ package com.typingdna.api.model;
 
 public abstract class APIResponse {
 
+    /**
+     * Error code of the responses returned without a request while the circuit breaker of the endpoint is open.
+     */
+    public static final int CIRCUIT_OPEN = -2;
+
     private boolean error = false;
     private int code = 0;
     private boolean isTemporary = false;
@@ -44,4 +49,8 @@ public abstract class APIResponse {
     public boolean isTemporary() {
         return isTemporary;
     }
+
+    public boolean isCircuitOpen() {
+        return error && code == CIRCUIT_OPEN;
+    }
 }
@@ -83,6 +83,10 @@ public abstract class AbstractCore {
         this.nodeId = nodeId;
     }
 
+    public String getNodeId() {
+        return nodeId;
+    }
+
     public String getRequestIdentifier() {
         String requestIdentifier = config.requestIdentifier();
         if (!Strings.isNullOrEmpty(nodeId)) {
@@ -18,24 +18,39 @@
 package com.typingdna.core;
 
 import com.typingdna.core.businesslogic.AuthenticationData;
+import com.typingdna.core.businesslogic.ReplayGuard;
 import com.typingdna.core.businesslogic.TDNAAuthentication;
 import com.typingdna.core.statechanges.ExitNodeStateChange;
 import com.typingdna.core.statechanges.StateChange;
 import com.typingdna.util.ConfigAdapter;
-import com.typingdna.util.HelperFunctions;
+import com.typingdna.util.Metrics;
 import com.typingdna.api.TypingDNAAPI;
 import com.typingdna.util.State;
+import com.typingdna.util.UsernameHasher;
 
 public class Decision extends AbstractCore {
 
+    private final UsernameHasher usernameHasher;
+    private ReplayGuard replayGuard;
+
     public Decision(ConfigAdapter config, State state, TypingDNAAPI api) {
+        this(config, state, api, UsernameHasher.getInstance(config.usernameSalt(), config.hashAlgorithm()));
+    }
+
+    public Decision(ConfigAdapter config, State state, TypingDNAAPI api, UsernameHasher usernameHasher) {
         super(config, state, api);
+        this.usernameHasher = usernameHasher;
+    }
+
+    public Decision setReplayGuard(ReplayGuard replayGuard) {
+        this.replayGuard = replayGuard;
+        return this;
     }
 
     @Override
     public StateChange handleForm() {
         AuthenticationData authData = new AuthenticationData(
-                HelperFunctions.hashText(state.getUsername(), config.usernameSalt(), config.hashAlgorithm()),
+                usernameHasher.hash(state.getUsername()),
                 state.getTypingPattern(),
                 state.getDeviceType(),
                 state.getTextId(),
@@ -43,13 +58,14 @@ public class Decision extends AbstractCore {
                 getRequestIdentifier()
         );
 
-        TDNAAuthentication authentication = new TDNAAuthentication(config, state, api);
+        TDNAAuthentication authentication = new TDNAAuthentication(config, state, api).setReplayGuard(replayGuard);
         final StateChange stateChange = authentication.performAuthentication(authData);
 
         if (stateChange instanceof ExitNodeStateChange) {
             final ExitNodeStateChange exitNodeStateChange = (ExitNodeStateChange) stateChange;
             this.setAction(exitNodeStateChange.getAction());
             this.setAutoEnroll(exitNodeStateChange.isAutoEnroll());
+            Metrics.getInstance().recordOutcome(exitNodeStateChange.getOutcome());
         }
 
         return stateChange;
@@ -0,0 +1,98 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core;
+
+import com.typingdna.util.Constants;
+import com.typingdna.util.HelperFunctions;
+import com.typingdna.util.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The static part of the recorder script (the TypingDNA recorder class and the visualizer) as a single content
+ * addressed file, so it can be served once and cached by the browser instead of being inlined in every callback.
+ */
+final class RecorderScriptBundle {
+
+    private static final Logger logger = Logger.getInstance();
+
+    private final byte[] content;
+    private final String fileName;
+    private final String integrity;
+
+    private RecorderScriptBundle(byte[] content, byte[] digest) {
+        this.content = content;
+        this.fileName = String.format("typingdna-%s.js", HelperFunctions.bytesToHex(Arrays.copyOf(digest, 8)).toLowerCase());
+        this.integrity = "sha384-" + Base64.getEncoder().encodeToString(digest);
+    }
+
+    static RecorderScriptBundle of(String script) {
+        byte[] content = String.format("%s\n%s\n", script, Constants.typingPatternVisualizer).getBytes(StandardCharsets.UTF_8);
+        try {
+            return new RecorderScriptBundle(content, MessageDigest.getInstance("SHA-384").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the Subresource Integrity value of the bundle, checked by the browser before running it.
+     */
+    String getIntegrity() {
+        return integrity;
+    }
+
+    String getUrl(String origin) {
+        return String.format("%s/%s", HelperFunctions.trimUrl(origin), fileName);
+    }
+
+    /**
+     * Writes the bundle to the given directory, unless it is already there. The file name changes with the content,
+     * so an existing file never needs to be replaced.
+     */
+    void publish(String directory) {
+        try {
+            Path target = Paths.get(directory).resolve(fileName);
+            if (Files.exists(target) && Files.size(target) == content.length) {
+                return;
+            }
+
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), fileName, ".tmp");
+            Files.write(temp, content);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.debug("In TypingDNARecorder: published recorder script bundle {}", target);
+        } catch (IOException | RuntimeException e) {
+            logger.error("TypingDNARecorder could not publish the recorder script bundle to {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,388 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core;
+
+import com.google.common.base.Strings;
+import com.typingdna.util.ConfigAdapter;
+import com.typingdna.util.Constants;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * The recorder script split into the segments that only depend on the node configuration, which are built once per
+ * configuration, and the slots that change with every request (textId, textToEnter and the previous action).
+ * When a static script origin is configured the recorder class and the visualizer are left out of the script and
+ * loaded from a {@link RecorderScriptBundle} instead. When minification is enabled the generated segments are
+ * {@link #minify minified}; the recorder script and the visualizer are embedded as they are.
+ */
+final class RecorderScriptTemplate {
+
+    private static final int MAX_TEMPLATES = 32;
+    private static final char NO_QUOTE = 0;
+
+    private static final Map<Key, RecorderScriptTemplate> templates = new LinkedHashMap<Key, RecorderScriptTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, RecorderScriptTemplate> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
+    private final String head;
+    private final String beforeTextId;
+    private final String beforeTextToEnter;
+    private final String tail;
+
+    private final String highlightHead;
+    private final String highlightMiddle;
+    private final String highlightTail;
+    private final String disableCopyAndPaste;
+    private final String changeLoginButtonText;
+
+    private RecorderScriptTemplate(Key key) {
+        String targetIds = key.targetIds.stream().map(t -> "'" + t + "'").collect(Collectors.joining(","));
+
+        String inlineScript;
+        String inlineVisualizer;
+        String loadedCondition;
+        String loader;
+        if (Strings.isNullOrEmpty(key.staticScriptOrigin)) {
+            inlineScript = "if (typeof TypingDNA === 'undefined') { " + key.script + " }\n";
+            inlineVisualizer = "  " + Constants.typingPatternVisualizer + "\n\n";
+            loadedCondition = "typeof TypingDNA !== 'undefined'";
+            loader = "      scriptElem.src = 'https://typingdna.com/scripts/typingdna.js';\n";
+        } else {
+            RecorderScriptBundle bundle = RecorderScriptBundle.of(key.script);
+            if (!Strings.isNullOrEmpty(key.staticScriptDirectory)) {
+                bundle.publish(key.staticScriptDirectory);
+            }
+
+            inlineScript = "";
+            inlineVisualizer = "";
+            loadedCondition = "typeof TypingDNA !== 'undefined' && typeof TypingVisualizer !== 'undefined'";
+            loader = "      scriptElem.src = '" + bundle.getUrl(key.staticScriptOrigin) + "';\n" +
+                    "      scriptElem.integrity = '" + bundle.getIntegrity() + "';\n" +
+                    "      scriptElem.crossOrigin = 'anonymous';\n";
+        }
+
+        UnaryOperator<String> wrapper = key.minify ? segment -> minify(segment, NO_QUOTE) : UnaryOperator.identity();
+
+        head = inlineScript + wrapper.apply(
+                "function triggerEvent(element) {\n" +
+                "   if ('createEvent' in document) {\n" +
+                "       var evt = document.createEvent('HTMLEvents');\n" +
+                "       evt.initEvent('change', false, true);\n" +
+                "       element.dispatchEvent(evt);\n" +
+                "   } else {\n" +
+                "       element.fireEvent('onchange');\n" +
+                "   }\n" +
+                "}\n" +
+                "function dataCollectors() {\n" +
+                "(function(output) {\n" +
+                "  var tdna = new TypingDNA();\n" +
+                "  var hiddenInput = document.getElementById('" + Constants.DEVICE_TYPE_OUTPUT_VARIABLE + "');\n" +
+                "  hiddenInput.value = tdna.isMobile();\n" +
+                "  triggerEvent(hiddenInput);\n" +
+                "})(document.forms[0].elements['" + Constants.DEVICE_TYPE_OUTPUT_VARIABLE + "']);\n" +
+                "\n" +
+                "(function(output) {\n") +
+                inlineVisualizer +
+                "  ";
+
+        beforeTextId = wrapper.apply("\n\n" +
+                "  var typingVisualizer = new TypingVisualizer();\n" +
+                "  var tdna = new TypingDNA();\n" +
+                "  tdna.start();\n" +
+                "  var inputs = Array.from(document.getElementsByTagName('input')).filter(input => input && input.id && [" + targetIds + "].find(function (x) { return x == input.id; }));\n" +
+                "  var targets = [];\n" +
+                "  for (var i = 0; i < inputs.length; i++) {\n" +
+                "       var input = inputs[i];\n" +
+                "       input.value = '';\n" +
+                "       if (" + key.showVisualizer + ") {\n" +
+                "           typingVisualizer.addTarget([input.id]);\n" +
+                "       }\n" +
+                "       tdna.addTarget(input.id);\n" +
+                "       targets.push(input.id);\n" +
+                "  }\n" +
+                "  typingVisualizer.correctPosition();\n" +
+                "  var button = document.getElementById('" + key.submitButtonId + "');\n" +
+                "  if (!button) { console.error('Submit button not found! Set the correct id in the TypingDNA Recorder Node configuration.'); return; }\n" +
+                "  button.onclick = function (e) {\n" +
+                "      var patternHiddenInput = document.getElementById('" + Constants.PATTERN_OUTPUT_VARIABLE + "');\n" +
+                "      var textIdHiddenInput = document.getElementById('" + Constants.TEXT_ID_OUTPUT_VARIABLE + "');\n" +
+                "      var textId = ");
+
+        beforeTextToEnter = ";\n" +
+                "      var textToEnter = ";
+
+        tail = wrapper.apply(";\n" +
+                "      var inputs = [];\n" +
+                "      var type = 2;\n" +
+                "      for (var inputId of [" + targetIds + "]) { var input = document.getElementById(inputId); if (input) { inputs.push(input); if (input.type == 'password') { type = 1; } } }\n" +
+                "      if (!textId) { textId = tdna.getTextId(inputs.map(input => input.value).join('')); }\n" +
+                "      if (!textToEnter) { textToEnter = inputs.map(input => input.value).join(''); }\n" +
+                "      var typingPattern = tdna.getTypingPattern({type: type, text: textToEnter});\n" +
+                "      if (!typingPattern) { typingPattern = '" + Constants.PATTERN_OUTPUT_VARIABLE + "'; }\n" +
+                "      patternHiddenInput.value = typingPattern;\n" +
+                "      textIdHiddenInput.value = textId;\n" +
+                "      triggerEvent(patternHiddenInput); triggerEvent(textIdHiddenInput);\n" +
+                "      tdna.reset();\n" +
+                "  };\n" +
+                "})(document.forms[0].elements['" + Constants.PATTERN_OUTPUT_VARIABLE + "']);\n" +
+                "\n" +
+                "}\n" +
+                "\n" +
+                "if (" + loadedCondition + ") {\n" +
+                "    if (!document.getElementById('" + Constants.DEVICE_TYPE_OUTPUT_VARIABLE + "')) {\n" +
+                "        var target = document.querySelector('body');\n" +
+                "        var observer = new MutationObserver(function () {\n" +
+                "            if (document.getElementById('" + Constants.DEVICE_TYPE_OUTPUT_VARIABLE + "')) {\n" +
+                "                dataCollectors();\n" +
+                "                observer.disconnect();\n" +
+                "             }\n" +
+                "        });\n" +
+                "        observer.observe(target, { childList: true, subtree: true });\n" +
+                "    } else {\n" +
+                "        dataCollectors();\n" +
+                "    }\n" +
+                "} else {\n" +
+                "      var root = document.head;\n" +
+                "      var scriptElem = document.createElement('script');\n" +
+                loader +
+                "      scriptElem.async = false;\n" +
+                "      root.insertBefore(scriptElem, root.firstChild);\n" +
+                "      scriptElem.addEventListener('error', function() {\n" +
+                "          throw new Error('TypingDNA recorder not loaded');\n" +
+                "      });\n" +
+                "      scriptElem.addEventListener('load', function() {\n" +
+                "          dataCollectors();\n" +
+                "      });\n" +
+                "}");
+
+        highlightHead = "try {\n" +
+                "function setHighlight(enteredText) {\n" +
+                "        var shortPhraseText = \"";
+        highlightMiddle = inString(key.minify, '"', "\";\n" +
+                "        var shortPhraseTextLowercased = shortPhraseText.toLowerCase();\n" +
+                "        var shortPhraseDisplay = Array.from(document.getElementsByTagName('div')).filter(function(e) {\n" +
+                "            return e.id && e.id.indexOf('callback_') >= 0 && e.textContent === '");
+        highlightTail = inString(key.minify, '\'', "';\n" +
+                "        })[0];\n" +
+                "    \n" +
+                "        for (var i = 0; i < enteredText.length && i < shortPhraseTextLowercased.length && enteredText[i] === shortPhraseTextLowercased[i]; ++i);\n" +
+                "        var entered = document.createElement('span');\n" +
+                "        entered.textContent = shortPhraseText.slice(0, i);\n" +
+                "        var toBeEntered = document.createElement('span');\n" +
+                "        toBeEntered.style = 'background-color: rgb(255, 156, 82, 0.4);';\n" +
+                "        toBeEntered.textContent = shortPhraseText.slice(i);\n" +
+                "    \n" +
+                "        shortPhraseDisplay.textContent = \"\";\n" +
+                "        shortPhraseDisplay.appendChild(entered);\n" +
+                "        shortPhraseDisplay.appendChild(toBeEntered);\n" +
+                "}\n" +
+                "    setHighlight('');\n" +
+                "    var input = Array.from(document.getElementsByTagName('input')).filter(function(e) {\n" +
+                "        return e.type && e.type === 'text' && e.id && [" + targetIds + "].find(function (x) { return x == e.id; });\n" +
+                "    })[0];\n" +
+                "    input.addEventListener('input', function (e) {\n" +
+                "        var enteredText = e.target.value;\n" +
+                "        enteredText = enteredText.toLowerCase();\n" +
+                "        setHighlight(enteredText);\n" +
+                "    });\n" +
+                "} catch (e) {console.error(e);}\n");
+
+        disableCopyAndPaste = !key.disableCopyAndPaste ? "" : wrapper.apply("(function () {\n" +
+                "    var inputs = Array.from(document.getElementsByTagName('input')).filter(input => input && input.id && [" + targetIds + "].find(function (x) { return x == input.id; }));\n" +
+                "    if (inputs[0]) { var i = inputs[0]; while (i && i.tagName != 'FORM') { i = i.parentElement; } if (i) { i.setAttribute('autocomplete', 'off'); } }\n" +
+                "    inputs.forEach(input => {\n" +
+                "        input.oncopy = function () { return false; };\n" +
+                "        input.onpaste = function () { return false; }\n;" +
+                "    });\n" +
+                "})();\n");
+
+        changeLoginButtonText = wrapper.apply("var lgnBtn = document.getElementById('" + key.submitButtonId + "');\n" +
+                "if (lgnBtn) {\n" +
+                "    lgnBtn.value = 'Enroll';\n" +
+                "}\n");
+    }
+
+    private static String inString(boolean minify, char quote, String segment) {
+        return minify ? minify(segment, quote) : segment;
+    }
+
+    static RecorderScriptTemplate forConfig(ConfigAdapter config) {
+        Key key = new Key(config.script().getScript(), config.targetIds(), config.showVisualizer(),
+                config.submitButtonId(), config.disableCopyAndPaste(), config.staticScriptOrigin(), config.staticScriptDirectory(),
+                config.minifyRecorderScript());
+
+        synchronized (templates) {
+            return templates.computeIfAbsent(key, RecorderScriptTemplate::new);
+        }
+    }
+
+    String render(String textId, String textToEnter, ActionType previousAction) {
+        StringBuilder builder = new StringBuilder(head.length() + tail.length() + 4096);
+        builder.append(head);
+        appendDynamicSegments(builder, textId, textToEnter, previousAction);
+        return builder.append(tail).toString();
+    }
+
+    private void appendDynamicSegments(StringBuilder builder, String textId, String textToEnter, ActionType previousAction) {
+        boolean hasTextToEnter = !Strings.isNullOrEmpty(textToEnter);
+        boolean hasTextId = !Strings.isNullOrEmpty(textId);
+        boolean isEnroll = previousAction == ActionType.ENROLL || previousAction == ActionType.ENROLL_POSITION;
+
+        if (hasTextToEnter) {
+            builder.append(highlightHead).append(textToEnter).append(highlightMiddle).append(textToEnter).append(highlightTail);
+        }
+        builder.append(disableCopyAndPaste);
+        if (isEnroll) {
+            builder.append(changeLoginButtonText);
+        }
+
+        builder.append(beforeTextId);
+        if (hasTextId) {
+            builder.append('"').append(textId).append('"');
+        } else {
+            builder.append("undefined");
+        }
+
+        builder.append(beforeTextToEnter);
+        if (hasTextToEnter) {
+            builder.append('"').append(textToEnter).append('"');
+        } else {
+            builder.append("undefined");
+        }
+    }
+
+    /**
+     * Removes the whitespace of a generated script segment that is not needed to parse it: indentation, blank lines,
+     * line breaks after ';', '{' and ',' and spaces next to punctuation. String literals are left untouched, so a
+     * segment which starts inside a literal (it continues a slot) must be given its quote character.
+     */
+    static String minify(String segment, char openQuote) {
+        StringBuilder builder = new StringBuilder(segment.length());
+        char quote = openQuote;
+        int length = segment.length();
+
+        int i = 0;
+        while (i < length) {
+            char c = segment.charAt(i);
+
+            if (quote != NO_QUOTE) {
+                builder.append(c);
+                if (c == '\\' && i + 1 < length) {
+                    builder.append(segment.charAt(i + 1));
+                    i += 2;
+                    continue;
+                }
+                if (c == quote) {
+                    quote = NO_QUOTE;
+                }
+                i++;
+            } else if (c == '"' || c == '\'' || c == '`') {
+                quote = c;
+                builder.append(c);
+                i++;
+            } else if (Character.isWhitespace(c)) {
+                int end = i;
+                boolean hasNewLine = false;
+                while (end < length && Character.isWhitespace(segment.charAt(end))) {
+                    hasNewLine |= segment.charAt(end) == '\n';
+                    end++;
+                }
+
+                if (i == 0 || end == length) {
+                    // the neighbouring segment is not known, keep one separator
+                    builder.append(hasNewLine ? '\n' : ' ');
+                } else {
+                    char previous = builder.charAt(builder.length() - 1);
+                    char next = segment.charAt(end);
+
+                    if (hasNewLine && previous != ';' && previous != '{' && previous != ',') {
+                        builder.append('\n');
+                    } else if (isIdentifierPart(previous) && isIdentifierPart(next)
+                            || (previous == '+' || previous == '-') && previous == next) {
+                        builder.append(' ');
+                    }
+                }
+                i = end;
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static final class Key {
+        private final String script;
+        private final List<String> targetIds;
+        private final boolean showVisualizer;
+        private final String submitButtonId;
+        private final boolean disableCopyAndPaste;
+        private final String staticScriptOrigin;
+        private final String staticScriptDirectory;
+        private final boolean minify;
+
+        private Key(String script, List<String> targetIds, boolean showVisualizer, String submitButtonId, boolean disableCopyAndPaste,
+                    String staticScriptOrigin, String staticScriptDirectory, boolean minify) {
+            this.script = script;
+            this.targetIds = targetIds;
+            this.showVisualizer = showVisualizer;
+            this.submitButtonId = submitButtonId;
+            this.disableCopyAndPaste = disableCopyAndPaste;
+            this.staticScriptOrigin = staticScriptOrigin;
+            this.staticScriptDirectory = staticScriptDirectory;
+            this.minify = minify;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return showVisualizer == other.showVisualizer
+                    && disableCopyAndPaste == other.disableCopyAndPaste
+                    && minify == other.minify
+                    && Objects.equals(submitButtonId, other.submitButtonId)
+                    && Objects.equals(targetIds, other.targetIds)
+                    && Objects.equals(staticScriptOrigin, other.staticScriptOrigin)
+                    && Objects.equals(staticScriptDirectory, other.staticScriptDirectory)
+                    && Objects.equals(script, other.script);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(script, targetIds, showVisualizer, submitButtonId, disableCopyAndPaste, staticScriptOrigin, staticScriptDirectory, minify);
+        }
+    }
+}
@@ -17,41 +17,58 @@
 
 package com.typingdna.core;
 
+import com.typingdna.api.PatternCountCache;
 import com.typingdna.api.model.DeleteUserResponse;
+import com.typingdna.core.statechanges.AuditDetail;
 import com.typingdna.core.statechanges.ExitNodeStateChange;
 import com.typingdna.core.statechanges.StateChange;
 import com.typingdna.nodes.outcomeproviders.TypingDNAResetProfileOutcomeProvider;
 import com.typingdna.api.TypingDNAAPI;
 import com.typingdna.util.ConfigAdapter;
-import com.typingdna.util.HelperFunctions;
 import com.typingdna.util.Logger;
 import com.typingdna.util.Messages;
 import com.typingdna.util.State;
+import com.typingdna.util.UsernameHasher;
 
 public class ResetProfile extends AbstractCore {
 
+    private final UsernameHasher usernameHasher;
+
     public ResetProfile(ConfigAdapter config, State state, TypingDNAAPI api) {
+        this(config, state, api, UsernameHasher.getInstance(config.usernameSalt(), config.hashAlgorithm()));
+    }
+
+    public ResetProfile(ConfigAdapter config, State state, TypingDNAAPI api, UsernameHasher usernameHasher) {
         super(config, state, api);
+        this.usernameHasher = usernameHasher;
     }
 
     @Override
     public StateChange handleForm() {
-        logger.debug(String.format("In TypingDNAResetProfile: resetting username=%s", state.getUsername()));
+        logger.debug("In TypingDNAResetProfile: resetting username={}", state.getUsername());
+
+        String username = usernameHasher.hash(state.getUsername());
+        AuditDetail auditDetail = new AuditDetail();
+        long start = System.nanoTime();
+        DeleteUserResponse response = api.deleteUser(username, getRequestIdentifier());
+        auditDetail.recordApiCall(System.nanoTime() - start);
+        PatternCountCache.getInstance().invalidate(config.apiKey(), username);
 
-        DeleteUserResponse response = api.deleteUser(HelperFunctions.hashText(state.getUsername(), config.usernameSalt(), config.hashAlgorithm()), getRequestIdentifier());
         if (response.isError()) {
             this.setAction("RESET_PROFILE");
-            Logger.getInstance().info(String.format("username %s, action RESET_PROFILE, outcome FAIL", state.getUsername()));
+            Logger.getInstance().info("username {}, action RESET_PROFILE, outcome FAIL", state.getUsername());
 
             state.setMessage(Messages.RESET_FAIL);
-            return new ExitNodeStateChange(TypingDNAResetProfileOutcomeProvider.TypingDNAResetProfileOutcome.ERROR.name()).setSharedState(state.getSharedState()).setTransientState(state.getTransientState());
+            return new ExitNodeStateChange(TypingDNAResetProfileOutcomeProvider.TypingDNAResetProfileOutcome.ERROR.name()).setSharedState(state.getSharedState()).setTransientState(state.getTransientState())
+                    .setAction("RESET_PROFILE").setAuditDetail(auditDetail);
         } else {
             this.setAction("RESET_PROFILE");
-            Logger.getInstance().info(String.format("username %s, action RESET_PROFILE, outcome SUCCESS", state.getUsername()));
+            Logger.getInstance().info("username {}, action RESET_PROFILE, outcome SUCCESS", state.getUsername());
 
             state.setMessage(Messages.RESET_SUCCESS);
             state.setPatternsEnrolled(0);
-            return new ExitNodeStateChange(TypingDNAResetProfileOutcomeProvider.TypingDNAResetProfileOutcome.SUCCESS.name()).setSharedState(state.getSharedState()).setTransientState(state.getTransientState());
+            return new ExitNodeStateChange(TypingDNAResetProfileOutcomeProvider.TypingDNAResetProfileOutcome.SUCCESS.name()).setSharedState(state.getSharedState()).setTransientState(state.getTransientState())
+                    .setAction("RESET_PROFILE").setAuditDetail(auditDetail);
         }
     }
 
@@ -41,7 +41,7 @@ public class ShortPhrase extends AbstractCore {
         boolean isFormDisplayed = state.getCallbacks(NameCallback.class)
                 .map(NameCallback::getName)
                 .anyMatch(result -> !Strings.isNullOrEmpty(result));
-        logger.debug(String.format("In TypingDNAShortPhraseCollector: short phrase input %s inserted", isFormDisplayed ? "is" : "is not"));
+        logger.debug("In TypingDNAShortPhraseCollector: short phrase input {} inserted", isFormDisplayed ? "is" : "is not");
         return isFormDisplayed;
     }
 
@@ -0,0 +1,249 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core.businesslogic;
+
+import com.typingdna.util.Constants;
+import com.typingdna.util.Metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the typing patterns recently sent for verification, so that the exact same pattern submitted again for
+ * the same user can be rejected without a request. Patterns are kept in two generations of Bloom filters: once the
+ * current generation holds {@code windowSize} patterns it replaces the previous one, so between {@code windowSize} and
+ * {@code 2 * windowSize} of the most recent patterns are remembered and the memory used never grows. A guard is shared
+ * by the nodes configured with the same settings, and dropped once no node uses them anymore. Nodes resolve their guard
+ * once, when they are created, and hold on to it.
+ */
+public final class ReplayGuard {
+
+    private static final Map<GuardKey, ReplayGuard> guards = new ConcurrentHashMap<>();
+    private static final Map<String, GuardKey> nodes = new ConcurrentHashMap<>();
+
+    private static final long FNV1A64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV1A64_PRIME = 0x100000001b3L;
+    private static final int MAX_HASHES = 16;
+
+    private final int windowSize;
+    private final int bitCount;
+    private final int hashCount;
+    private long[] current;
+    private long[] previous;
+    private int currentSize = 0;
+
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    ReplayGuard(int windowSize, int falsePositivesPerMillion) {
+        windowSize = Math.min(Math.max(windowSize, 1), Constants.MAX_REPLAY_WINDOW_SIZE);
+        double falsePositiveRate = Math.min(Math.max(falsePositivesPerMillion, 1), 1000000) / 1000000.0;
+        // Each generation is sized for the false positive rate on its own, so a lookup in both stays within ~2x.
+        long bits = (long) Math.ceil(-windowSize * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+        this.windowSize = windowSize;
+        this.bitCount = (int) Math.max(bits, 64);
+        this.hashCount = (int) Math.min(Math.max(Math.round((double) bitCount / windowSize * Math.log(2)), 1), MAX_HASHES);
+        this.current = new long[(bitCount + 63) / 64];
+        this.previous = new long[current.length];
+    }
+
+    public static ReplayGuard getInstance(String nodeId, int windowSize, int falsePositivesPerMillion) {
+        GuardKey key = new GuardKey(windowSize, falsePositivesPerMillion);
+        if (key.equals(nodes.get(nodeId))) {
+            ReplayGuard guard = guards.get(key);
+            if (guard != null) {
+                return guard;
+            }
+        }
+
+        return getInstance(nodeId, key);
+    }
+
+    private static synchronized ReplayGuard getInstance(String nodeId, GuardKey key) {
+        GuardKey previousKey = nodes.put(nodeId, key);
+        if (previousKey != null && !previousKey.equals(key)) {
+            dropUnused(previousKey);
+        }
+
+        return guards.computeIfAbsent(key, k -> {
+            ReplayGuard guard = new ReplayGuard(k.windowSize, k.falsePositivesPerMillion);
+            String name = k.getName();
+            Metrics.getInstance().registerGauge(name + " checks", guard::getChecks);
+            Metrics.getInstance().registerGauge(name + " replays", guard::getReplays);
+            Metrics.getInstance().registerGauge(name + " rotations", guard::getRotations);
+            Metrics.getInstance().registerGauge(name + " memoryBytes", guard::getMemoryBytes);
+            return guard;
+        });
+    }
+
+    /**
+     * Called for a node with replay protection turned off, so that the guard it used is dropped if no other node
+     * uses it.
+     */
+    public static void release(String nodeId) {
+        if (nodes.containsKey(nodeId)) {
+            drop(nodeId);
+        }
+    }
+
+    private static synchronized void drop(String nodeId) {
+        GuardKey previousKey = nodes.remove(nodeId);
+        if (previousKey != null) {
+            dropUnused(previousKey);
+        }
+    }
+
+    public static int size() {
+        return guards.size();
+    }
+
+    public static synchronized void shutdown() {
+        guards.clear();
+        nodes.clear();
+        Metrics.getInstance().unregisterGauges("replayGuard ");
+    }
+
+    private static void dropUnused(GuardKey key) {
+        if (!nodes.containsValue(key) && guards.remove(key) != null) {
+            Metrics.getInstance().unregisterGauges(key.getName() + " ");
+        }
+    }
+
+    /**
+     * Records the typing pattern of a user.
+     *
+     * @return true if the same pattern was already recorded for the user, in which case it is not recorded again.
+     */
+    public boolean checkAndRecord(String apiKey, String username, String typingPattern) {
+        checks.incrementAndGet();
+
+        long hash1 = FNV1A64_OFFSET_BASIS;
+        long hash2 = ~FNV1A64_OFFSET_BASIS;
+        for (String part : new String[]{apiKey, username, typingPattern}) {
+            String text = part == null ? "" : part;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                hash1 = (hash1 ^ c) * FNV1A64_PRIME;
+                hash2 = (hash2 ^ c) * 0x9e3779b97f4a7c15L;
+            }
+            hash1 = (hash1 ^ 0xffff) * FNV1A64_PRIME;
+            hash2 = (hash2 ^ 0xffff) * 0x9e3779b97f4a7c15L;
+        }
+        hash1 = mix(hash1);
+        hash2 = mix(hash2) | 1;
+
+        synchronized (this) {
+            if (contains(current, hash1, hash2) || contains(previous, hash1, hash2)) {
+                replays.incrementAndGet();
+                return true;
+            }
+
+            if (currentSize >= windowSize) {
+                long[] recycled = previous;
+                Arrays.fill(recycled, 0L);
+                previous = current;
+                current = recycled;
+                currentSize = 0;
+                rotations.incrementAndGet();
+            }
+
+            for (int i = 0; i < hashCount; i++) {
+                int bit = index(hash1, hash2, i);
+                current[bit >>> 6] |= 1L << bit;
+            }
+            currentSize++;
+        }
+
+        return false;
+    }
+
+    public long getChecks() {
+        return checks.get();
+    }
+
+    public long getReplays() {
+        return replays.get();
+    }
+
+    public long getRotations() {
+        return rotations.get();
+    }
+
+    public long getMemoryBytes() {
+        return 2L * current.length * Long.BYTES;
+    }
+
+    private boolean contains(long[] bits, long hash1, long hash2) {
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(hash1, hash2, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(long hash1, long hash2, int i) {
+        return (int) Long.remainderUnsigned(hash1 + i * hash2, bitCount);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class GuardKey {
+        private final int windowSize;
+        private final int falsePositivesPerMillion;
+
+        private GuardKey(int windowSize, int falsePositivesPerMillion) {
+            this.windowSize = windowSize;
+            this.falsePositivesPerMillion = falsePositivesPerMillion;
+        }
+
+        private String getName() {
+            return String.format("replayGuard %d %dppm", windowSize, falsePositivesPerMillion);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GuardKey)) {
+                return false;
+            }
+            GuardKey other = (GuardKey) o;
+            return windowSize == other.windowSize && falsePositivesPerMillion == other.falsePositivesPerMillion;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(windowSize, falsePositivesPerMillion);
+        }
+    }
+}
@@ -17,23 +17,31 @@
 
 package com.typingdna.core.businesslogic;
 
+import com.typingdna.api.PatternCountCache;
 import com.typingdna.api.TypingDNAAPI;
 import com.typingdna.api.model.APIResponse;
 import com.typingdna.api.model.CheckUserResponse;
-import com.typingdna.api.model.PatternType;
 import com.typingdna.api.model.VerifyResponse;
 import com.typingdna.core.ActionType;
+import com.typingdna.core.statechanges.AuditDetail;
 import com.typingdna.core.statechanges.ExitNodeStateChange;
 import com.typingdna.core.statechanges.StateChange;
 import com.typingdna.nodes.outcomeproviders.TypingDNADecisionOutcomeProvider.TypingDNADecisionOutcome;
 import com.typingdna.util.ConfigAdapter;
-import com.typingdna.util.Constants;
+import com.typingdna.util.HelperFunctions;
 import com.typingdna.util.Logger;
 import com.typingdna.util.Messages;
+import com.typingdna.util.Span;
 import com.typingdna.util.State;
+import com.typingdna.util.Tracer;
 import org.forgerock.util.Strings;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
 
 import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.forgerock.util.promise.Promises.newResultPromise;
 
 public class TDNAAuthentication {
     private static final Logger logger = Logger.getInstance();
@@ -41,6 +49,10 @@ public class TDNAAuthentication {
     private final ConfigAdapter config;
     private final State state;
     private final TypingDNAAPI api;
+    private final PatternCountCache patternCountCache = PatternCountCache.getInstance();
+    private PatternCountCache.Key patternCountKey;
+    private final AuditDetail auditDetail = new AuditDetail();
+    private ReplayGuard replayGuard;
 
     public TDNAAuthentication(ConfigAdapter config, State state, TypingDNAAPI api) {
         this.config = config;
@@ -48,69 +60,150 @@ public class TDNAAuthentication {
         this.api = api;
     }
 
+    /**
+     * @param replayGuard the guard of the node, or null when replay protection is turned off
+     */
+    public TDNAAuthentication setReplayGuard(ReplayGuard replayGuard) {
+        this.replayGuard = replayGuard;
+        return this;
+    }
+
     public StateChange performAuthentication(AuthenticationData authData) {
-        logger.debug(String.format("In TypingDNADecisionNode: preparing to authenticate username=%s previousAction=%s", authData.getUsername(), authData.getPreviousAction()));
+        try (Span span = Tracer.getInstance().startSpan("TDNAAuthentication.performAuthentication")) {
+            span.setAttribute(Tracer.REQUEST_ID, authData.getRequestIdentifier());
 
-        if (isTypingPatternInvalid(authData.getTypingPattern())) {
-            logger.debug(String.format("In TypingDNADecisionNode: pattern received is invalid username=%s tp=%s", authData.getUsername(), authData.getTypingPattern()));
+            StateChange stateChange = performAuthenticationAsync(authData).getOrThrowUninterruptibly();
+            span.setAttribute("typingdna.outcome", stateChange.getOutcome());
+            return stateChange;
+        }
+    }
+
+    public Promise<StateChange, NeverThrowsException> performAuthenticationAsync(AuthenticationData authData) {
+        return authenticate(authData).then(stateChange -> {
+            auditDetail.setRetries(state.getRetries());
+            return stateChange.setAuditDetail(auditDetail);
+        });
+    }
+
+    private Promise<ExitNodeStateChange, NeverThrowsException> authenticate(AuthenticationData authData) {
+        logger.debug("In TypingDNADecisionNode: preparing to authenticate username={} previousAction={}", authData.getUsername(), authData.getPreviousAction());
+
+        TypingPatternParser.Result typingPattern = TypingPatternParser.parse(authData.getTypingPattern());
+        if (!typingPattern.isValid()) {
+            logger.debug("In TypingDNADecisionNode: pattern received is invalid username={} reason={}", authData.getUsername(), typingPattern.getRejection());
 
             state.setPreviousAction(ActionType.VERIFY);
             state.setMessage(Messages.TOO_MANY_TYPOS);
 
-            logger.info(String.format("username %s, action VERIFY, outcome FAIL", state.getUsername()));
+            logger.info("username {}, action VERIFY, outcome FAIL", state.getUsername());
 
-            return new ExitNodeStateChange(TypingDNADecisionOutcome.RETRY.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
-                    .setAction("VERIFY");
+            return newResultPromise(handOffState(new ExitNodeStateChange(TypingDNADecisionOutcome.RETRY.name())
+                    .setAction("VERIFY")));
         }
 
-        PatternType patternType = getPatternType(authData.getTypingPattern());
-        if (patternType == PatternType.INVALID) {
-            logger.debug(String.format("In TypingDNADecisionNode: invalid pattern type username=%s tp=%s", authData.getUsername(), authData.getTypingPattern()));
+        if (replayGuard != null && replayGuard.checkAndRecord(config.apiKey(), authData.getUsername(), authData.getTypingPattern())) {
+            logger.debug("In TypingDNADecisionNode: typing pattern was already submitted username={}", authData.getUsername());
+            logger.info("username {}, action VERIFY, outcome NO_MATCH, replay TRUE", state.getUsername());
 
-            state.setPreviousAction(ActionType.VERIFY);
-            state.setMessage(Messages.TOO_MANY_TYPOS);
+            ExitNodeStateChange stateChange = handleNoMatch(authData, false);
+            setMessage(stateChange, authData);
+            return newResultPromise(handOffState(stateChange));
+        }
 
-            logger.info(String.format("username %s, action VERIFY, outcome FAIL", state.getUsername()));
+        patternCountKey = new PatternCountCache.Key(config.apiKey(), authData.getUsername(), typingPattern.getPatternType(), authData.getTextId(), authData.getDeviceType());
 
-            return new ExitNodeStateChange(TypingDNADecisionOutcome.RETRY.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
-                    .setAction("VERIFY");
+        Promise<ExitNodeStateChange, NeverThrowsException> promise;
+        if (authData.getPreviousAction() == ActionType.VERIFY) {
+            Promise<CheckUserResponse, NeverThrowsException> checkUserPromise = checkUser(authData);
+
+            if (config.parallelPreCheck()) {
+                logger.debug("In TypingDNADecisionNode: checking user and verifying in parallel username={}", authData.getUsername());
+
+                Promise<VerifyResponse, NeverThrowsException> verifyPromise = verify(authData);
+                promise = checkUserPromise.thenAsync(response -> verifyPromise.then(verifyResponse -> {
+                    setPatternsEnrolled(response.getPatternCount());
+                    return handleVerifyResponse(authData, verifyResponse);
+                }));
+            } else {
+                Span span = Tracer.getInstance().currentSpan();
+                promise = checkUserPromise.thenAsync(response -> {
+                    setPatternsEnrolled(response.getPatternCount());
+                    return Tracer.getInstance().withSpan(span, () -> handleVerify(authData));
+                });
+            }
+        } else {
+            promise = handleVerify(authData);
         }
 
-        StateChange stateChange;
-        if (authData.getPreviousAction() == ActionType.VERIFY) {
-            CheckUserResponse response = api.checkUser(authData.getUsername(), patternType, authData.getTextId(), authData.getDeviceType(), authData.getRequestIdentifier());
-            setPatternsEnrolled(response.getPatternCount());
+        return promise.then(stateChange -> {
+            setMessage(stateChange, authData);
+            logger.debug("In TypingDNADecisionNode: username {} new outcome {}", authData.getUsername(), stateChange.getOutcome());
+
+            return handOffState(stateChange);
+        });
+    }
+
+    private Promise<CheckUserResponse, NeverThrowsException> checkUser(AuthenticationData authData) {
+        int ttl = config.patternCountCacheTtl();
+        if (ttl <= 0) {
+            return timeApiCall(() -> api.checkUserAsync(authData.getUsername(), patternCountKey.getPatternType(),
+                    authData.getTextId(), authData.getDeviceType(), authData.getRequestIdentifier()));
         }
-        stateChange = handleVerify(authData);
 
-        setMessage(stateChange, authData);
-        logger.debug(String.format("In TypingDNADecisionNode: username %s new outcome %s", authData.getUsername(), stateChange.getOutcome()));
+        Integer patternCount = patternCountCache.get(patternCountKey);
+        if (patternCount != null) {
+            logger.debug("In TypingDNADecisionNode: pattern count={} served from cache username={}", patternCount, authData.getUsername());
 
-        return stateChange;
+            auditDetail.recordCacheHit();
+            CheckUserResponse response = new CheckUserResponse();
+            response.setPatternCount(patternCount);
+            return newResultPromise(response);
+        }
+
+        return timeApiCall(() -> api.checkUserAsync(authData.getUsername(), patternCountKey.getPatternType(),
+                authData.getTextId(), authData.getDeviceType(), authData.getRequestIdentifier()))
+                .thenOnResult(response -> {
+                    if (!response.isError()) {
+                        patternCountCache.put(patternCountKey, response.getPatternCount(), ttl);
+                    }
+                });
     }
 
-    private StateChange handleVerify(AuthenticationData authData) {
-        StateChange stateChange = null;
+    private Promise<ExitNodeStateChange, NeverThrowsException> handleVerify(AuthenticationData authData) {
+        return verify(authData).then(verifyResponse -> handleVerifyResponse(authData, verifyResponse));
+    }
 
+    private Promise<VerifyResponse, NeverThrowsException> verify(AuthenticationData authData) {
         String patternsToVerify = getPatternsToVerify(authData);
-        VerifyResponse verifyResponse = api.verify(authData.getUsername(), patternsToVerify, authData.getRequestIdentifier());
 
-        if (verifyResponse.isError() && !verifyResponse.isTemporary()) {
+        return timeApiCall(() -> api.verifyAsync(authData.getUsername(), patternsToVerify, authData.getRequestIdentifier()));
+    }
+
+    private <T> Promise<T, NeverThrowsException> timeApiCall(Supplier<Promise<T, NeverThrowsException>> call) {
+        long start = System.nanoTime();
+        return call.get().thenOnResult(response -> auditDetail.recordApiCall(System.nanoTime() - start));
+    }
+
+    private ExitNodeStateChange handleVerifyResponse(AuthenticationData authData, VerifyResponse verifyResponse) {
+        ExitNodeStateChange stateChange = null;
+
+        if (verifyResponse.isCircuitOpen()) {
+            logger.info("username {}, action VERIFY, outcome UNAVAILABLE", state.getUsername());
+
+            state.setPreviousAction(ActionType.VERIFY);
+            stateChange = new ExitNodeStateChange(getCircuitOpenOutcome().name())
+                    .setApiResponse(verifyResponse)
+                    .setAction("VERIFY");
+        } else if (verifyResponse.isError() && !verifyResponse.isTemporary()) {
             String action;
             if (state.getPreviousAction() == ActionType.ENROLL || state.getPreviousAction() == ActionType.ENROLL_POSITION) {
                 action = "ENROLL";
             } else {
                 action = "VERIFY";
             }
-            logger.info(String.format("username %s, action %s, outcome FAIL", state.getUsername(), action));
+            logger.info("username {}, action {}, outcome FAIL", state.getUsername(), action);
 
             stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.FAIL.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
                     .setApiResponse(verifyResponse)
                     .setAction("VERIFY");
         } else if (verifyResponse.isError()) {
@@ -119,126 +212,112 @@ public class TDNAAuthentication {
 
                 ActionType previousAction = state.getPreviousAction();
                 if (previousAction == ActionType.ENROLL || previousAction == ActionType.ENROLL_POSITION) {
-                    logger.info(String.format("username %s, action ENROLL, outcome FAIL", state.getUsername()));
+                    logger.info("username {}, action ENROLL, outcome FAIL", state.getUsername());
                     stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.ENROLL.name())
-                            .setSharedState(state.getSharedState())
-                            .setTransientState(state.getTransientState())
                             .setApiResponse(verifyResponse)
                             .setAction("ENROLL");
                 } else {
-                    logger.info(String.format("username %s, action VERIFY, outcome FAIL, autoenroll FALSE", state.getUsername()));
+                    logger.info("username {}, action VERIFY, outcome FAIL, autoenroll FALSE", state.getUsername());
                     state.setPreviousAction(ActionType.RETRY);
                     stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.RETRY.name())
-                            .setSharedState(state.getSharedState())
-                            .setTransientState(state.getTransientState())
                             .setApiResponse(verifyResponse)
                             .setAction("VERIFY");
                 }
             } else {
-                logger.info(String.format("username %s, action VERIFY, outcome FAIL, autoenroll FALSE", state.getUsername()));
+                logger.info("username {}, action VERIFY, outcome FAIL, autoenroll FALSE", state.getUsername());
                 state.setPreviousAction(ActionType.VERIFY);
                 stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.FAIL.name())
-                        .setSharedState(state.getSharedState())
-                        .setTransientState(state.getTransientState())
                         .setApiResponse(verifyResponse)
                         .setAction("VERIFY");
             }
         } else if (verifyResponse.isNeedsEnroll() || verifyResponse.isNeedsEnrollPosition()) {
             if (verifyResponse.isPatternEnrolled()) {
-                logger.info(String.format("username %s, action ENROLL, outcome SUCCESS", state.getUsername()));
+                logger.info("username {}, action ENROLL, outcome SUCCESS", state.getUsername());
                 incrementPatternsEnrolled();
             }
 
             state.setPreviousAction(verifyResponse.isNeedsEnrollPosition() ? ActionType.ENROLL_POSITION : ActionType.ENROLL);
             stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.ENROLL.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
                     .setAction("ENROLL");
         } else if (!verifyResponse.isMatch() && !(verifyResponse.isNeedsEnroll() || verifyResponse.isNeedsEnrollPosition()) && verifyResponse.isPatternEnrolled()) {
-            logger.info(String.format("username %s, action ENROLL, outcome ENROLL_COMPLETE", state.getUsername()));
+            logger.info("username {}, action ENROLL, outcome ENROLL_COMPLETE", state.getUsername());
 
             incrementPatternsEnrolled();
 
             state.setPreviousAction(ActionType.VERIFY);
             stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.INITIAL_ENROLLMENT_COMPLETE.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
                     .setAction("ENROLL");
         } else if (verifyResponse.isMatch()) {
-            logger.info(String.format("username %s, action VERIFY, outcome MATCH, autoenroll %s", state.getUsername(), verifyResponse.isPatternEnrolled() ? "TRUE" : "FALSE"));
+            logger.info("username {}, action VERIFY, outcome MATCH, autoenroll {}", state.getUsername(), verifyResponse.isPatternEnrolled() ? "TRUE" : "FALSE");
             if (verifyResponse.isPatternEnrolled()) {
                 incrementPatternsEnrolled();
             }
 
             state.setPreviousAction(ActionType.VERIFY);
             stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.MATCH.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
                     .setAction("VERIFY")
                     .setAutoEnroll(verifyResponse.isPatternEnrolled());
         } else {
-            logger.info(String.format("username %s, action VERIFY, outcome NO_MATCH, autoenroll FALSE", state.getUsername()));
-            stateChange = handleNoMatch(authData);
+            logger.info("username {}, action VERIFY, outcome NO_MATCH, autoenroll FALSE", state.getUsername());
+            stateChange = handleNoMatch(authData, true);
         }
 
         return stateChange;
     }
 
-    private StateChange handleNoMatch(AuthenticationData authData) {
-        StateChange stateChange;
+    private ExitNodeStateChange handleNoMatch(AuthenticationData authData, boolean keepTypingPattern) {
+        ExitNodeStateChange stateChange;
 
         if (state.getRetries() < config.retries()) {
-            logger.debug(String.format("In TypingDNADecisionNode: verification failed but enough retries left username=%s", authData.getUsername()));
+            logger.debug("In TypingDNADecisionNode: verification failed but enough retries left username={}", authData.getUsername());
 
-            state.setPreviousTypingPatterns(authData.getTypingPattern());
+            if (keepTypingPattern) {
+                String previousTypingPatterns = authData.getPreviousAction() == ActionType.RETRY ? state.getPreviousTypingPatterns() : null;
+                state.setPreviousTypingPatterns(HelperFunctions.pushTypingPattern(previousTypingPatterns, authData.getTypingPattern(), config.previousPatternsLimit()));
+            }
             state.incrementRetries();
             state.setPreviousAction(ActionType.RETRY);
             stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.RETRY.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
                     .setAction("VERIFY");
         } else {
-            logger.debug(String.format("In TypingDNADecisionNode: verification failed, no retries left username=%s", authData.getUsername()));
+            logger.debug("In TypingDNADecisionNode: verification failed, no retries left username={}", authData.getUsername());
 
             state.setPreviousAction(ActionType.VERIFY);
             stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.NO_MATCH.name())
-                    .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
                     .setAction("VERIFY");
         }
 
         return stateChange;
     }
 
-    private boolean isTypingPatternInvalid(String typingPattern) {
-        return Strings.isNullOrEmpty(typingPattern) || typingPattern.equalsIgnoreCase(Constants.PATTERN_OUTPUT_VARIABLE);
-    }
-
-    private PatternType getPatternType(String typingPattern) {
-        final String[] patternProps = typingPattern.split(",", 5);
-        if (patternProps.length < 5) {
-            return PatternType.INVALID;
-        } else {
-            return patternProps[3].equals("0") ? PatternType.SAME_TEXT : PatternType.SAME_TEXT_EXTENDED;
+    private TypingDNADecisionOutcome getCircuitOpenOutcome() {
+        ConfigAdapter.CircuitOpenOutcome outcome = config.circuitOpenOutcome();
+        if (outcome == ConfigAdapter.CircuitOpenOutcome.UNAVAILABLE) {
+            return TypingDNADecisionOutcome.UNAVAILABLE;
+        } else if (outcome == ConfigAdapter.CircuitOpenOutcome.NO_MATCH) {
+            return TypingDNADecisionOutcome.NO_MATCH;
         }
+        return TypingDNADecisionOutcome.FAIL;
     }
 
     private void setPatternsEnrolled(int patternsEnrolled) {
-        logger.debug(String.format("In TypingDNADecisionNode: Set patterns enrolled in shared state patternsEnrolled=%d ", patternsEnrolled));
+        logger.debug("In TypingDNADecisionNode: Set patterns enrolled in shared state patternsEnrolled={} ", patternsEnrolled);
         state.setPatternsEnrolled(patternsEnrolled);
     }
 
     private void incrementPatternsEnrolled() {
         int patternsEnrolled = state.getPatternsEnrolled() + 1;
-        logger.debug(String.format("In TypingDNADecisionNode: Incrementing patterns enrolled in shared state patternsEnrolled=%d ", patternsEnrolled));
+        logger.debug("In TypingDNADecisionNode: Incrementing patterns enrolled in shared state patternsEnrolled={} ", patternsEnrolled);
         state.setPatternsEnrolled(patternsEnrolled);
+
+        patternCountCache.put(patternCountKey, patternsEnrolled, config.patternCountCacheTtl());
     }
 
     private String getPatternsToVerify(AuthenticationData authData) {
         String patternsToVerify;
 
         if (authData.getPreviousAction() == ActionType.RETRY) {
-            logger.debug(String.format("In TypingDNADecisionNode: Adding failed typing pattern to the new typing pattern username=%s", authData.getUsername()));
+            logger.debug("In TypingDNADecisionNode: Adding failed typing pattern to the new typing pattern username={}", authData.getUsername());
 
             String previousTypingPatterns = state.getPreviousTypingPatterns();
             patternsToVerify = Strings.isNullOrEmpty(previousTypingPatterns) ?
@@ -250,21 +329,19 @@ public class TDNAAuthentication {
         return patternsToVerify;
     }
 
-    private void setMessage(StateChange stateChange, AuthenticationData authData) {
+    private void setMessage(ExitNodeStateChange stateChange, AuthenticationData authData) {
         String message = null;
 
-        ExitNodeStateChange exitNodeStateChange = (ExitNodeStateChange) stateChange;
-        String errorMessage = getErrorMessage(exitNodeStateChange.apiResponse);
+        String errorMessage = getErrorMessage(stateChange.apiResponse);
 
         if (errorMessage != null) {
             message = errorMessage;
         } else {
-            Integer actionId = exitNodeStateChange.sharedState != null ? exitNodeStateChange.sharedState.get(Constants.PREVIOUS_ACTION).asInteger() : null;
-            if (actionId == null) {
+            if (!state.hasPreviousAction()) {
                 return;
             }
 
-            ActionType action = ActionType.toActionType(actionId);
+            ActionType action = state.getPreviousAction();
 
             if (action == ActionType.RETRY) {
                 message = Messages.AUTH_FAILED;
@@ -277,7 +354,15 @@ public class TDNAAuthentication {
             }
         }
 
-        exitNodeStateChange.sharedState.put(Constants.MESSAGE, message);
+        state.setMessage(message);
+    }
+
+    /**
+     * Hands the final state over to the state change, once every change to it has been made.
+     */
+    private ExitNodeStateChange handOffState(ExitNodeStateChange stateChange) {
+        return stateChange.setSharedState(state.getSharedState())
+                .setTransientState(state.getTransientState());
     }
 
     private String getErrorMessage(Optional<APIResponse> apiResponseOptional) {
@@ -288,7 +373,9 @@ public class TDNAAuthentication {
         APIResponse apiResponse = apiResponseOptional.get();
         String message = null;
 
-        if (apiResponse.isError()) {
+        if (apiResponse.isCircuitOpen()) {
+            message = Messages.SERVICE_UNAVAILABLE;
+        } else if (apiResponse.isError()) {
             if (apiResponse.isTemporary()) {
                 message = Messages.temporaryError(apiResponse.getCode());
             } else {
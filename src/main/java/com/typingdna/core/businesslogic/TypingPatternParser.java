@@ -0,0 +1,163 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core.businesslogic;
+
+import com.typingdna.api.model.PatternType;
+import com.typingdna.util.Constants;
+
+/**
+ * Single pass validator for the typing patterns produced by the TypingDNA recorder: a comma separated header followed
+ * by '|' separated keystroke entries. Patterns which are rejected here can not be verified by the TypingDNA API, so
+ * they are sent back to the user without a request.
+ */
+public final class TypingPatternParser {
+
+    private static final int HEADER_FIELDS = 5;
+    private static final int PATTERN_TYPE_FIELD = 3;
+    private static final int SYNTHETIC_MIN_KEYSTROKES = 4;
+
+    public enum Rejection {
+        EMPTY,
+        OVERSIZED,
+        TRUNCATED,
+        MALFORMED,
+        SYNTHETIC,
+    }
+
+    public static final class Result {
+        private final Rejection rejection;
+        private final PatternType patternType;
+        private final int keystrokes;
+
+        private Result(Rejection rejection, PatternType patternType, int keystrokes) {
+            this.rejection = rejection;
+            this.patternType = patternType;
+            this.keystrokes = keystrokes;
+        }
+
+        public boolean isValid() {
+            return rejection == null;
+        }
+
+        public Rejection getRejection() {
+            return rejection;
+        }
+
+        public PatternType getPatternType() {
+            return patternType;
+        }
+
+        public int getKeystrokes() {
+            return keystrokes;
+        }
+    }
+
+    private TypingPatternParser() {
+    }
+
+    public static Result parse(String typingPattern) {
+        if (typingPattern == null || typingPattern.isEmpty() || typingPattern.equalsIgnoreCase(Constants.PATTERN_OUTPUT_VARIABLE)) {
+            return reject(Rejection.EMPTY);
+        }
+        if (typingPattern.length() > Constants.MAX_TYPING_PATTERN_LENGTH) {
+            return reject(Rejection.OVERSIZED);
+        }
+
+        int length = typingPattern.length();
+        int headerFields = 0;
+        boolean sameText = false;
+        int keystrokes = 0;
+        int firstKeystroke = -1;
+        int firstKeystrokeLength = 0;
+        boolean identicalKeystrokes = true;
+
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? typingPattern.charAt(i) : '|';
+
+            if (firstKeystroke < 0) {
+                if (c != ',' && c != '|') {
+                    continue;
+                }
+
+                if (headerFields < HEADER_FIELDS && !isNumber(typingPattern, start, i)) {
+                    return reject(Rejection.MALFORMED);
+                }
+                if (headerFields == PATTERN_TYPE_FIELD) {
+                    sameText = i - start == 1 && typingPattern.charAt(start) == '0';
+                }
+                headerFields++;
+                start = i + 1;
+
+                if (c == '|') {
+                    if (headerFields < HEADER_FIELDS) {
+                        return reject(Rejection.TRUNCATED);
+                    }
+                    firstKeystroke = start;
+                }
+            } else if (c == '|') {
+                int keystrokeLength = i - start;
+                if (keystrokeLength == 0) {
+                    return reject(i == length && keystrokes == 0 ? Rejection.TRUNCATED : Rejection.MALFORMED);
+                }
+
+                if (keystrokes == 0) {
+                    firstKeystrokeLength = keystrokeLength;
+                } else if (identicalKeystrokes) {
+                    identicalKeystrokes = keystrokeLength == firstKeystrokeLength
+                            && typingPattern.regionMatches(start, typingPattern, firstKeystroke, keystrokeLength);
+                }
+                keystrokes++;
+                start = i + 1;
+            }
+        }
+
+        if (keystrokes >= SYNTHETIC_MIN_KEYSTROKES && identicalKeystrokes) {
+            return reject(Rejection.SYNTHETIC);
+        }
+
+        return new Result(null, sameText ? PatternType.SAME_TEXT : PatternType.SAME_TEXT_EXTENDED, keystrokes);
+    }
+
+    private static Result reject(Rejection rejection) {
+        return new Result(rejection, PatternType.INVALID, 0);
+    }
+
+    private static boolean isNumber(String text, int start, int end) {
+        int i = start;
+        if (i < end && text.charAt(i) == '-') {
+            i++;
+        }
+
+        int digits = 0;
+        boolean decimalPoint = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !decimalPoint && digits > 0) {
+                decimalPoint = true;
+                digits = 0;
+            } else {
+                return false;
+            }
+        }
+
+        return digits > 0;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.core.statechanges;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performance details of one node invocation, recorded in the audit entry of the node. API calls may complete on
+ * different threads, e.g. when the user check and the verification run in parallel.
+ */
+public final class AuditDetail {
+
+    private final AtomicInteger apiCalls = new AtomicInteger();
+    private final AtomicLong apiLatency = new AtomicLong();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private volatile int retries = 0;
+
+    public void recordApiCall(long latencyNanos) {
+        apiCalls.incrementAndGet();
+        apiLatency.addAndGet(latencyNanos);
+    }
+
+    public void recordCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    public int getApiCalls() {
+        return apiCalls.get();
+    }
+
+    /**
+     * @return the sum of the API call latencies in milliseconds; calls made in parallel are all counted
+     */
+    public long getApiLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(apiLatency.get());
+    }
+
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+}
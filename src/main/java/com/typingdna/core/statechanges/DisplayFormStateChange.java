@@ -48,10 +48,10 @@ public class DisplayFormStateChange implements StateChange {
     public Action build() {
         Action.ActionBuilder actionBuilder = send(callbacks);
         if (sharedState != null) {
-            actionBuilder.replaceSharedState(sharedState.copy());
+            actionBuilder.replaceSharedState(sharedState);
         }
         if (transientState != null) {
-            actionBuilder.replaceTransientState(transientState.copy());
+            actionBuilder.replaceTransientState(transientState);
         }
 
         return actionBuilder.build();
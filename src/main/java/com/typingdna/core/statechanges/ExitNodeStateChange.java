@@ -23,6 +23,10 @@ import org.forgerock.openam.auth.node.api.Action;
 
 import java.util.Optional;
 
+import static org.forgerock.json.JsonValue.field;
+import static org.forgerock.json.JsonValue.json;
+import static org.forgerock.json.JsonValue.object;
+
 
 public class ExitNodeStateChange implements StateChange {
     public final String outcome;
@@ -31,6 +35,7 @@ public class ExitNodeStateChange implements StateChange {
     public Optional<APIResponse> apiResponse = Optional.empty();
     public String action = "n/a";
     public boolean isAutoEnroll = false;
+    public AuditDetail auditDetail = null;
 
     public ExitNodeStateChange(String outcome) {
         this.outcome = outcome;
@@ -69,14 +74,39 @@ public class ExitNodeStateChange implements StateChange {
         return this;
     }
 
+    public AuditDetail getAuditDetail() {
+        return auditDetail;
+    }
+
+    public ExitNodeStateChange setAuditDetail(AuditDetail auditDetail) {
+        this.auditDetail = auditDetail;
+        return this;
+    }
+
+    /**
+     * @return the action, the outcome and, when recorded, the API calls, their total latency in ms, the cache hits and
+     * the retries of the invocation which led to this state change
+     */
+    public JsonValue getAuditEntryDetail() {
+        JsonValue detail = json(object(field("action", action), field("outcome", outcome)));
+        if (auditDetail != null) {
+            detail.put("apiCalls", auditDetail.getApiCalls());
+            detail.put("apiLatency", auditDetail.getApiLatency());
+            detail.put("cacheHits", auditDetail.getCacheHits());
+            detail.put("retries", auditDetail.getRetries());
+        }
+
+        return detail;
+    }
+
     @Override
     public Action build() {
         Action.ActionBuilder actionBuilder = Action.goTo(outcome);
         if (sharedState != null) {
-            actionBuilder.replaceSharedState(sharedState.copy());
+            actionBuilder.replaceSharedState(sharedState);
         }
         if (transientState != null) {
-            actionBuilder.replaceTransientState(transientState.copy());
+            actionBuilder.replaceTransientState(transientState);
         }
 
         return actionBuilder.build();
@@ -42,10 +42,10 @@ public class SingleOutcomeStateChange implements StateChange {
     public Action build() {
         Action.ActionBuilder actionBuilder = Action.goTo("outcome");
         if (sharedState != null) {
-            actionBuilder.replaceSharedState(sharedState.copy());
+            actionBuilder.replaceSharedState(sharedState);
         }
         if (transientState != null) {
-            actionBuilder.replaceTransientState(transientState.copy());
+            actionBuilder.replaceTransientState(transientState);
         }
 
         return actionBuilder.build();
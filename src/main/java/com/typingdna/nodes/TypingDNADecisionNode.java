@@ -19,19 +19,23 @@ package com.typingdna.nodes;
 
 import javax.inject.Inject;
 
-import com.typingdna.api.DeveloperAPI;
-import com.typingdna.api.ProEnterpriseAPI;
 import com.typingdna.api.TypingDNAAPI;
+import com.typingdna.api.TypingDNAAPIRegistry;
 import com.typingdna.core.Decision;
+import com.typingdna.core.businesslogic.ReplayGuard;
 import com.typingdna.core.statechanges.ExitNodeStateChange;
+import com.typingdna.core.statechanges.StateChange;
 import com.typingdna.nodes.outcomeproviders.TypingDNADecisionOutcomeProvider;
 import com.typingdna.nodes.outcomeproviders.TypingDNADecisionOutcomeProvider.TypingDNADecisionOutcome;
 import com.typingdna.util.ConfigAdapter;
 import com.typingdna.util.Constants;
 import com.typingdna.util.HashAlgorithm;
-import com.typingdna.util.HelperFunctions;
 import com.typingdna.util.Logger;
+import com.typingdna.util.Metrics;
+import com.typingdna.util.Span;
 import com.typingdna.util.State;
+import com.typingdna.util.Tracer;
+import com.typingdna.util.UsernameHasher;
 import org.forgerock.json.JsonValue;
 import org.forgerock.openam.annotations.sm.Attribute;
 
@@ -45,7 +49,6 @@ import org.forgerock.openam.sm.annotations.adapters.Password;
 
 import java.util.UUID;
 
-import static org.forgerock.json.JsonValue.field;
 import static org.forgerock.json.JsonValue.json;
 import static org.forgerock.json.JsonValue.object;
 
@@ -55,8 +58,13 @@ public class TypingDNADecisionNode extends AbstractDecisionNode {
 
     private final Config config;
     private final UUID nodeId;
-    private String actionPerformed = "";
-    private boolean isAutoEnroll = false;
+    private final UsernameHasher usernameHasher;
+    private final ReplayGuard replayGuard;
+    /**
+     * AM may share node instances between logins; it reads the audit entry detail on the thread which processed the
+     * login, right after process returns.
+     */
+    private final ThreadLocal<JsonValue> auditEntryDetail = new ThreadLocal<>();
 
     /**
      * Configuration for the node.
@@ -89,6 +97,12 @@ public class TypingDNADecisionNode extends AbstractDecisionNode {
             return 0;
         }
 
+        @Override
+        @Attribute(order = 405)
+        default int previousPatternsLimit() {
+            return 1;
+        }
+
         @Override
         @Attribute(order = 410)
         default HashAlgorithm hashAlgorithm() {
@@ -112,6 +126,72 @@ public class TypingDNADecisionNode extends AbstractDecisionNode {
         default int requestTimeout() {
             return 8000;
         }
+
+        @Override
+        @Attribute(order = 1200)
+        default int connectionPoolSize() {
+            return Constants.DEFAULT_CONNECTION_POOL_SIZE;
+        }
+
+        @Override
+        @Attribute(order = 1300)
+        default boolean parallelPreCheck() {
+            return false;
+        }
+
+        @Override
+        @Attribute(order = 1400)
+        default int patternCountCacheTtl() {
+            return 300;
+        }
+
+        @Override
+        @Attribute(order = 1500)
+        default int replayWindowSize() {
+            return 0;
+        }
+
+        @Override
+        @Attribute(order = 1600)
+        default int replayFalsePositivesPerMillion() {
+            return 1;
+        }
+
+        @Override
+        @Attribute(order = 1700)
+        default int circuitBreakerOpenDuration() {
+            return 30;
+        }
+
+        @Override
+        @Attribute(order = 1800)
+        default CircuitOpenOutcome circuitOpenOutcome() {
+            return CircuitOpenOutcome.FAIL;
+        }
+
+        @Override
+        @Attribute(order = 1900)
+        default int adaptiveTimeoutMultiplier() {
+            return 0;
+        }
+
+        @Override
+        @Attribute(order = 2000)
+        default int hedgePercentile() {
+            return 0;
+        }
+
+        @Override
+        @Attribute(order = 2100)
+        default boolean debugLogging() {
+            return false;
+        }
+
+        @Override
+        @Attribute(order = 2200)
+        default int debugSamplePercent() {
+            return 0;
+        }
     }
 
 
@@ -126,53 +206,79 @@ public class TypingDNADecisionNode extends AbstractDecisionNode {
         this.nodeId = nodeId;
         this.config = config;
 
-        Logger.getInstance().setDebug(Constants.DEBUG);
+        try {
+            this.usernameHasher = UsernameHasher.getInstance(config.usernameSalt(), config.hashAlgorithm());
+        } catch (IllegalArgumentException e) {
+            throw new NodeProcessException(String.format("Invalid username hashing configuration: %s", e.getMessage()), e);
+        }
+
+        if (config.replayWindowSize() > 0) {
+            this.replayGuard = ReplayGuard.getInstance(nodeId.toString(), config.replayWindowSize(), config.replayFalsePositivesPerMillion());
+        } else {
+            ReplayGuard.release(nodeId.toString());
+            this.replayGuard = null;
+        }
     }
 
     @Override
     public Action process(TreeContext context) {
-        State state = new State(context.sharedState.copy(),
-                context.transientState.copy(),
+        Span span = Tracer.getInstance().startSpan("TypingDNADecisionNode.process").setAttribute(Tracer.NODE_ID, nodeId.toString());
+        State state = new State(context.sharedState,
+                context.transientState,
                 context.getAllCallbacks());
 
-        try {
+        TypingDNAAPI api = null;
+        try (Logger.DebugScope ignored = Logger.getInstance().debugScope(config.debugLogging(),
+                usernameHasher.hash(state.getUsername()), config.debugSamplePercent())) {
             Logger.getInstance().debug("In TypingDNADecisionNode");
 
-            TypingDNAAPI api;
-            String apiUrl = HelperFunctions.trimUrl(config.apiUrl());
-            if (config.authAPIConfiguration() == ConfigAdapter.Configuration.Basic) {
-                api = new DeveloperAPI(apiUrl, config.apiKey(), new String(config.apiSecret()), config.requestTimeout());
-            } else {
-                api = new ProEnterpriseAPI(apiUrl, config.apiKey(), new String(config.apiSecret()), config.requestTimeout());
-            }
+            api = TypingDNAAPIRegistry.acquire(nodeId.toString(), TypingDNAAPIRegistry.Key.forDecisionNode(nodeId.toString(), config));
 
-            Decision useCase = new Decision(config, state, api);
+            Decision useCase = new Decision(config, state, api, usernameHasher).setReplayGuard(replayGuard);
             useCase.setNodeId(nodeId.toString());
+            span.setAttribute(Tracer.REQUEST_ID, useCase.getRequestIdentifier());
 
-            Action action = useCase.handleForm().build();
-            actionPerformed = useCase.getAction();
-            isAutoEnroll = useCase.isAutoEnroll();
+            StateChange stateChange = useCase.handleForm();
+            setAuditEntryDetail(stateChange);
 
-            api.close();
-
-            return action;
+            return stateChange.build();
         } catch (Exception e) {
-            Logger.getInstance().error(String.format("TypingDNADecisionNode unexpected error %s", e.getMessage()));
+            Logger.getInstance().error("TypingDNADecisionNode unexpected error {}", e.getMessage());
+            span.setError(e);
 
             state.setMessage("TypingDNA unknown error. Please try again.");
-            return new ExitNodeStateChange(TypingDNADecisionOutcome.FAIL.name())
+            Metrics.getInstance().recordOutcome(TypingDNADecisionOutcome.FAIL.name());
+            ExitNodeStateChange stateChange = new ExitNodeStateChange(TypingDNADecisionOutcome.FAIL.name())
                     .setSharedState(state.getSharedState())
-                    .setTransientState(state.getTransientState())
-                    .build();
+                    .setTransientState(state.getTransientState());
+            setAuditEntryDetail(stateChange);
+
+            return stateChange.build();
+        } finally {
+            if (api != null) {
+                TypingDNAAPIRegistry.release(api);
+            }
+            span.end();
         }
     }
 
-    @Override
-    public JsonValue getAuditEntryDetail() {
-        if (actionPerformed.equalsIgnoreCase("ENROLL")) {
-            return json(object(field("action", actionPerformed)));
+    private void setAuditEntryDetail(StateChange stateChange) {
+        if (!(stateChange instanceof ExitNodeStateChange)) {
+            auditEntryDetail.remove();
+            return;
         }
 
-        return json(object(field("action", actionPerformed), field("autoenroll", String.valueOf(isAutoEnroll))));
+        ExitNodeStateChange exitNodeStateChange = (ExitNodeStateChange) stateChange;
+        JsonValue detail = exitNodeStateChange.getAuditEntryDetail();
+        if (!exitNodeStateChange.getAction().equalsIgnoreCase("ENROLL")) {
+            detail.put("autoenroll", String.valueOf(exitNodeStateChange.isAutoEnroll()));
+        }
+        auditEntryDetail.set(detail);
+    }
+
+    @Override
+    public JsonValue getAuditEntryDetail() {
+        JsonValue detail = auditEntryDetail.get();
+        return detail != null ? detail : json(object());
     }
 }
@@ -21,6 +21,14 @@ import java.util.Arrays;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableMap;
+import com.typingdna.api.CircuitBreaker;
+import com.typingdna.api.EndpointRouter;
+import com.typingdna.api.TypingDNAAPIRegistry;
+import com.typingdna.core.businesslogic.ReplayGuard;
+import com.typingdna.util.HTTPRequestPool;
+import com.typingdna.util.RequestScheduler;
+import com.typingdna.util.Metrics;
+import com.typingdna.util.UsernameHasher;
 import org.forgerock.openam.auth.node.api.AbstractNodeAmPlugin;
 import org.forgerock.openam.auth.node.api.Node;
 import org.forgerock.openam.plugins.PluginException;
@@ -109,6 +117,22 @@ public class TypingDNAPlugin extends AbstractNodeAmPlugin {
         pluginTools.upgradeAuthNode(TypingDNAResetProfile.class);
     }
 
+    /**
+     * Handle plugin shutdown. Closes the API clients and the HTTP connection pools, drops the circuit breakers and the
+     * replay guards, stops the request timers shared by the TypingDNA nodes and unregisters the metrics MBean.
+     */
+    @Override
+    public void onShutdown() {
+        TypingDNAAPIRegistry.shutdown();
+        HTTPRequestPool.shutdown();
+        CircuitBreaker.shutdown();
+        EndpointRouter.shutdown();
+        RequestScheduler.shutdown();
+        ReplayGuard.shutdown();
+        UsernameHasher.clear();
+        Metrics.shutdown();
+    }
+
     /**
      * The plugin version. This must be in semver (semantic version) format.
      *
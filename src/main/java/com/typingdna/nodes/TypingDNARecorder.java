@@ -24,7 +24,9 @@ import com.typingdna.util.ConfigAdapter;
 
 import com.typingdna.util.Constants;
 import com.typingdna.util.Logger;
+import com.typingdna.util.Span;
 import com.typingdna.util.State;
+import com.typingdna.util.Tracer;
 import org.forgerock.openam.annotations.sm.Attribute;
 
 import org.forgerock.openam.auth.node.api.Action;
@@ -45,12 +47,14 @@ import com.google.inject.assistedinject.Assisted;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 @Node.Metadata(outcomeProvider = SingleOutcomeNode.OutcomeProvider.class,
         configClass = TypingDNARecorder.Config.class)
 public class TypingDNARecorder extends SingleOutcomeNode {
 
     private final Config config;
+    private final UUID nodeId;
 
     /**
      * Configuration for the node.
@@ -105,6 +109,24 @@ public class TypingDNARecorder extends SingleOutcomeNode {
         default String submitButtonId() {
             return "loginButton_0";
         }
+
+        @Override
+        @Attribute(order = 700)
+        default String staticScriptOrigin() {
+            return "";
+        }
+
+        @Override
+        @Attribute(order = 800)
+        default String staticScriptDirectory() {
+            return "";
+        }
+
+        @Override
+        @Attribute(order = 900)
+        default boolean minifyRecorderScript() {
+            return true;
+        }
     }
 
     /**
@@ -112,18 +134,25 @@ public class TypingDNARecorder extends SingleOutcomeNode {
      * from the plugin.
      *
      * @param config The service config.
+     * @param nodeId The UUID of the node.
      */
     @Inject
-    public TypingDNARecorder(@Assisted Config config) {
+    public TypingDNARecorder(@Assisted Config config, @Assisted UUID nodeId) {
         this.config = config;
-
-        Logger.getInstance().setDebug(Constants.DEBUG);
+        this.nodeId = nodeId;
     }
 
     @Override
     public Action process(TreeContext context) throws NodeProcessException {
-        State state = new State(context.sharedState.copy(),
-                context.transientState.copy(),
+        try (Span span = Tracer.getInstance().startSpan("TypingDNARecorder.process")) {
+            span.setAttribute(Tracer.NODE_ID, nodeId.toString());
+            return process(context, span);
+        }
+    }
+
+    private Action process(TreeContext context, Span span) throws NodeProcessException {
+        State state = new State(context.sharedState,
+                context.transientState,
                 context.getAllCallbacks());
 
         try {
@@ -137,7 +166,8 @@ public class TypingDNARecorder extends SingleOutcomeNode {
                 return useCase.displayForm().build();
             }
         } catch (Exception e) {
-            Logger.getInstance().error(String.format("TypingDNARecorder unexpected error %s", e.getMessage()));
+            Logger.getInstance().error("TypingDNARecorder unexpected error {}", e.getMessage());
+            span.setError(e);
             throw new NodeProcessException(e);
         }
     }
@@ -18,17 +18,20 @@
 package com.typingdna.nodes;
 
 import com.google.inject.assistedinject.Assisted;
-import com.typingdna.api.DeveloperAPI;
 import com.typingdna.api.TypingDNAAPI;
+import com.typingdna.api.TypingDNAAPIRegistry;
 import com.typingdna.core.ResetProfile;
 import com.typingdna.core.statechanges.ExitNodeStateChange;
+import com.typingdna.core.statechanges.StateChange;
 import com.typingdna.nodes.outcomeproviders.TypingDNAResetProfileOutcomeProvider;
 import com.typingdna.util.ConfigAdapter;
 import com.typingdna.util.Constants;
 import com.typingdna.util.HashAlgorithm;
-import com.typingdna.util.HelperFunctions;
 import com.typingdna.util.Logger;
+import com.typingdna.util.Span;
 import com.typingdna.util.State;
+import com.typingdna.util.Tracer;
+import com.typingdna.util.UsernameHasher;
 import org.forgerock.json.JsonValue;
 import org.forgerock.openam.annotations.sm.Attribute;
 import org.forgerock.openam.auth.node.api.AbstractDecisionNode;
@@ -41,7 +44,6 @@ import org.forgerock.openam.sm.annotations.adapters.Password;
 import javax.inject.Inject;
 import java.util.UUID;
 
-import static org.forgerock.json.JsonValue.field;
 import static org.forgerock.json.JsonValue.json;
 import static org.forgerock.json.JsonValue.object;
 
@@ -51,8 +53,13 @@ public class TypingDNAResetProfile extends AbstractDecisionNode {
 
     private final Config config;
     private final UUID nodeId;
+    private final UsernameHasher usernameHasher;
 
-    private String actionPerformed = "";
+    /**
+     * AM may share node instances between logins; it reads the audit entry detail on the thread which processed the
+     * login, right after process returns.
+     */
+    private final ThreadLocal<JsonValue> auditEntryDetail = new ThreadLocal<>();
 
     public interface Config extends ConfigAdapter {
         @Override
@@ -92,6 +99,30 @@ public class TypingDNAResetProfile extends AbstractDecisionNode {
         default int requestTimeout() {
             return 8000;
         }
+
+        @Override
+        @Attribute(order = 700)
+        default int connectionPoolSize() {
+            return Constants.DEFAULT_CONNECTION_POOL_SIZE;
+        }
+
+        @Override
+        @Attribute(order = 800)
+        default int circuitBreakerOpenDuration() {
+            return 30;
+        }
+
+        @Override
+        @Attribute(order = 900)
+        default boolean debugLogging() {
+            return false;
+        }
+
+        @Override
+        @Attribute(order = 1000)
+        default int debugSamplePercent() {
+            return 0;
+        }
     }
 
     @Inject
@@ -99,43 +130,66 @@ public class TypingDNAResetProfile extends AbstractDecisionNode {
         this.config = config;
         this.nodeId = nodeId;
 
-        Logger.getInstance().setDebug(Constants.DEBUG);
+        try {
+            this.usernameHasher = UsernameHasher.getInstance(config.usernameSalt(), config.hashAlgorithm());
+        } catch (IllegalArgumentException e) {
+            throw new NodeProcessException(String.format("Invalid username hashing configuration: %s", e.getMessage()), e);
+        }
     }
 
     @Override
     public Action process(TreeContext context) {
-        State state = new State(context.sharedState.copy(),
-                context.transientState.copy(),
+        Span span = Tracer.getInstance().startSpan("TypingDNAResetProfile.process").setAttribute(Tracer.NODE_ID, nodeId.toString());
+        State state = new State(context.sharedState,
+                context.transientState,
                 context.getAllCallbacks());
 
-        try {
+        TypingDNAAPI api = null;
+        try (Logger.DebugScope ignored = Logger.getInstance().debugScope(config.debugLogging(),
+                usernameHasher.hash(state.getUsername()), config.debugSamplePercent())) {
             Logger.getInstance().debug("In TypingDNAResetProfile");
 
-            String apiUrl = HelperFunctions.trimUrl(config.apiUrl());
-            TypingDNAAPI api = new DeveloperAPI(apiUrl, config.apiKey(), new String(config.apiSecret()), config.requestTimeout());
+            api = TypingDNAAPIRegistry.acquire(nodeId.toString(), TypingDNAAPIRegistry.Key.forResetProfile(nodeId.toString(), config));
 
-            ResetProfile useCase = new ResetProfile(config, state, api);
+            ResetProfile useCase = new ResetProfile(config, state, api, usernameHasher);
             useCase.setNodeId(nodeId.toString());
+            span.setAttribute(Tracer.REQUEST_ID, useCase.getRequestIdentifier());
 
-            final Action action = useCase.handleForm().build();
-            this.actionPerformed = useCase.getAction();
+            StateChange stateChange = useCase.handleForm();
+            setAuditEntryDetail(stateChange);
 
-            api.close();
-
-            return action;
+            return stateChange.build();
         } catch (Exception e) {
-            Logger.getInstance().error(String.format("TypingDNAResetProfile unexpected error %s", e.getMessage()));
+            Logger.getInstance().error("TypingDNAResetProfile unexpected error {}", e.getMessage());
+            span.setError(e);
 
             state.setMessage("TypingDNA unknown error. Please try again.");
-            return new ExitNodeStateChange(TypingDNAResetProfileOutcomeProvider.TypingDNAResetProfileOutcome.ERROR.name())
+            ExitNodeStateChange stateChange = new ExitNodeStateChange(TypingDNAResetProfileOutcomeProvider.TypingDNAResetProfileOutcome.ERROR.name())
                     .setSharedState(state.getSharedState())
                     .setTransientState(state.getTransientState())
-                    .build();
+                    .setAction("RESET_PROFILE");
+            setAuditEntryDetail(stateChange);
+
+            return stateChange.build();
+        } finally {
+            if (api != null) {
+                TypingDNAAPIRegistry.release(api);
+            }
+            span.end();
         }
     }
 
     @Override
     public JsonValue getAuditEntryDetail() {
-        return json(object(field("action", actionPerformed)));
+        JsonValue detail = auditEntryDetail.get();
+        return detail != null ? detail : json(object());
+    }
+
+    private void setAuditEntryDetail(StateChange stateChange) {
+        if (stateChange instanceof ExitNodeStateChange) {
+            auditEntryDetail.set(((ExitNodeStateChange) stateChange).getAuditEntryDetail());
+        } else {
+            auditEntryDetail.remove();
+        }
     }
 }
@@ -18,13 +18,15 @@
 package com.typingdna.nodes;
 
 import javax.inject.Inject;
+import java.util.UUID;
 
 import com.typingdna.core.ShortPhrase;
 import com.typingdna.util.ConfigAdapter;
-import com.typingdna.util.Constants;
 import com.typingdna.util.Logger;
 import com.typingdna.util.Messages;
+import com.typingdna.util.Span;
 import com.typingdna.util.State;
+import com.typingdna.util.Tracer;
 import org.forgerock.openam.annotations.sm.Attribute;
 import org.forgerock.openam.auth.node.api.*;
 
@@ -35,6 +37,7 @@ import com.google.inject.assistedinject.Assisted;
 public class TypingDNAShortPhraseCollector extends SingleOutcomeNode {
 
     private final Config config;
+    private final UUID nodeId;
 
     /**
      * Configuration for the node.
@@ -53,18 +56,25 @@ public class TypingDNAShortPhraseCollector extends SingleOutcomeNode {
      * from the plugin.
      *
      * @param config The service config.
+     * @param nodeId The UUID of the node.
      */
     @Inject
-    public TypingDNAShortPhraseCollector(@Assisted Config config) {
+    public TypingDNAShortPhraseCollector(@Assisted Config config, @Assisted UUID nodeId) {
         this.config = config;
-
-        Logger.getInstance().setDebug(Constants.DEBUG);
+        this.nodeId = nodeId;
     }
 
     @Override
     public Action process(TreeContext context) throws NodeProcessException {
-        State state = new State(context.sharedState.copy(),
-                context.transientState.copy(),
+        try (Span span = Tracer.getInstance().startSpan("TypingDNAShortPhraseCollector.process")) {
+            span.setAttribute(Tracer.NODE_ID, nodeId.toString());
+            return process(context, span);
+        }
+    }
+
+    private Action process(TreeContext context, Span span) throws NodeProcessException {
+        State state = new State(context.sharedState,
+                context.transientState,
                 context.getAllCallbacks());
 
         try {
@@ -78,7 +88,8 @@ public class TypingDNAShortPhraseCollector extends SingleOutcomeNode {
                 return useCase.displayForm().build();
             }
         } catch (Exception e) {
-            Logger.getInstance().error(String.format("TypingDNAShortPhraseCollector unexpected error %s", e.getMessage()));
+            Logger.getInstance().error("TypingDNAShortPhraseCollector unexpected error {}", e.getMessage());
+            span.setError(e);
             throw new NodeProcessException(e);
         }
     }
@@ -18,6 +18,7 @@
 package com.typingdna.nodes.outcomeproviders;
 
 import com.google.common.collect.ImmutableList;
+import com.typingdna.util.ConfigAdapter.CircuitOpenOutcome;
 import org.forgerock.json.JsonValue;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
 import org.forgerock.openam.auth.node.api.OutcomeProvider;
@@ -34,16 +35,24 @@ public class TypingDNADecisionOutcomeProvider implements OutcomeProvider {
         NO_MATCH,
         FAIL,
         INITIAL_ENROLLMENT_COMPLETE,
+        UNAVAILABLE,
     }
 
     @Override
     public List<Outcome> getOutcomes(PreferredLocales preferredLocales, JsonValue jsonValue) throws NodeProcessException {
-        return ImmutableList.of(
+        ImmutableList.Builder<Outcome> outcomes = ImmutableList.<Outcome>builder().add(
                 new Outcome(TypingDNADecisionOutcome.ENROLL.name(), "Enroll"),
                 new Outcome(TypingDNADecisionOutcome.INITIAL_ENROLLMENT_COMPLETE.name(), "Initial enrollment complete"),
                 new Outcome(TypingDNADecisionOutcome.RETRY.name(), "Retry"),
                 new Outcome(TypingDNADecisionOutcome.MATCH.name(), "Match"),
                 new Outcome(TypingDNADecisionOutcome.NO_MATCH.name(), "No match"),
                 new Outcome(TypingDNADecisionOutcome.FAIL.name(), "Fail"));
+
+        // The Unavailable outcome only exists when the node is configured to use it, so existing trees stay valid.
+        if (jsonValue != null && CircuitOpenOutcome.UNAVAILABLE.name().equals(jsonValue.get("circuitOpenOutcome").asString())) {
+            outcomes.add(new Outcome(TypingDNADecisionOutcome.UNAVAILABLE.name(), "Unavailable"));
+        }
+
+        return outcomes.build();
     }
 }
@@ -28,6 +28,12 @@ public interface ConfigAdapter {
         Advanced,
     }
 
+    enum CircuitOpenOutcome {
+        FAIL,
+        NO_MATCH,
+        UNAVAILABLE,
+    }
+
     default String apiUrl() {
         throw new NoSuchMethodError("apiUrl() method is not implemented");
     }
@@ -48,6 +54,10 @@ public interface ConfigAdapter {
         throw new NoSuchMethodError("retries() method is not implemented");
     }
 
+    default int previousPatternsLimit() {
+        throw new NoSuchMethodError("previousPatternsLimit() method is not implemented");
+    }
+
     default String textToEnter() {
         throw new NoSuchMethodError("textToEnter() method is not implemented");
     }
@@ -80,6 +90,50 @@ public interface ConfigAdapter {
         throw new NoSuchMethodError("requestTimeout() method is not implemented");
     }
 
+    default int connectionPoolSize() {
+        throw new NoSuchMethodError("connectionPoolSize() method is not implemented");
+    }
+
+    default boolean parallelPreCheck() {
+        throw new NoSuchMethodError("parallelPreCheck() method is not implemented");
+    }
+
+    default int patternCountCacheTtl() {
+        throw new NoSuchMethodError("patternCountCacheTtl() method is not implemented");
+    }
+
+    default int replayWindowSize() {
+        throw new NoSuchMethodError("replayWindowSize() method is not implemented");
+    }
+
+    default int replayFalsePositivesPerMillion() {
+        throw new NoSuchMethodError("replayFalsePositivesPerMillion() method is not implemented");
+    }
+
+    default int circuitBreakerOpenDuration() {
+        throw new NoSuchMethodError("circuitBreakerOpenDuration() method is not implemented");
+    }
+
+    default CircuitOpenOutcome circuitOpenOutcome() {
+        throw new NoSuchMethodError("circuitOpenOutcome() method is not implemented");
+    }
+
+    default int adaptiveTimeoutMultiplier() {
+        throw new NoSuchMethodError("adaptiveTimeoutMultiplier() method is not implemented");
+    }
+
+    default int hedgePercentile() {
+        throw new NoSuchMethodError("hedgePercentile() method is not implemented");
+    }
+
+    default boolean debugLogging() {
+        throw new NoSuchMethodError("debugLogging() method is not implemented");
+    }
+
+    default int debugSamplePercent() {
+        throw new NoSuchMethodError("debugSamplePercent() method is not implemented");
+    }
+
     default List<String> targetIds() {
         throw new NoSuchMethodError("targetIds() method is not implemented");
     }
@@ -88,6 +142,18 @@ public interface ConfigAdapter {
         throw new NoSuchMethodError("submitButtonId() method is not implemented");
     }
 
+    default String staticScriptOrigin() {
+        throw new NoSuchMethodError("staticScriptOrigin() method is not implemented");
+    }
+
+    default String staticScriptDirectory() {
+        throw new NoSuchMethodError("staticScriptDirectory() method is not implemented");
+    }
+
+    default boolean minifyRecorderScript() {
+        throw new NoSuchMethodError("minifyRecorderScript() method is not implemented");
+    }
+
     default HashAlgorithm hashAlgorithm() {
         throw new NoSuchMethodError("hashAlgorithm() method is not implemented");
     }
@@ -22,11 +22,12 @@ import org.forgerock.http.handler.HttpClientHandler;
 import org.forgerock.http.protocol.Form;
 import org.forgerock.http.protocol.Request;
 import org.forgerock.http.protocol.Response;
-import org.forgerock.json.JsonValue;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
 import org.forgerock.services.context.RootContext;
 import org.forgerock.util.Function;
 import org.forgerock.util.Options;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
 import org.forgerock.util.time.Duration;
 
 import java.io.IOException;
@@ -38,15 +39,22 @@ import static org.forgerock.http.protocol.Responses.noopExceptionFunction;
 import static org.forgerock.json.JsonValue.json;
 import static org.forgerock.util.CloseSilentlyFunction.closeSilently;
 import static org.forgerock.util.Closeables.closeSilentlyAsync;
+import static org.forgerock.util.promise.Promises.newExceptionPromise;
 
 public class HTTPRequest {
 
     private final HttpClientHandler httpClientHandler;
 
     public HTTPRequest(int requestTimeout) throws NodeProcessException {
+        this(requestTimeout, Constants.DEFAULT_CONNECTION_POOL_SIZE);
+    }
+
+    public HTTPRequest(int requestTimeout, int maxConnections) throws NodeProcessException {
         Options options = Options.defaultOptions();
         options.set(HttpClientHandler.OPTION_CONNECT_TIMEOUT, Duration.duration(requestTimeout, TimeUnit.MILLISECONDS));
         options.set(HttpClientHandler.OPTION_SO_TIMEOUT, Duration.duration(requestTimeout, TimeUnit.MILLISECONDS));
+        options.set(HttpClientHandler.OPTION_MAX_CONNECTIONS, maxConnections);
+        options.set(HttpClientHandler.OPTION_REUSE_CONNECTIONS, true);
 
         try {
             this.httpClientHandler = new HttpClientHandler(options);
@@ -56,55 +64,58 @@ public class HTTPRequest {
     }
 
     public JSONData get(String url, Map<String, String> headers) throws NodeProcessException {
-        Request request = createRequest(url, "GET", headers);
+        return await(getAsync(url, headers), url);
+    }
+
+    public JSONData delete(String url, Map<String, String> headers) throws NodeProcessException {
+        return await(deleteAsync(url, headers), url);
+    }
+
+    public JSONData post(String url, Map<String, String> headers, Map<String, String> data) throws NodeProcessException {
+        return await(postAsync(url, headers, data), url);
+    }
 
-        JsonValue reqResponse;
+    public Promise<JSONData, NodeProcessException> getAsync(String url, Map<String, String> headers) {
+        Span span = Tracer.getInstance().startDetachedSpan("HTTP GET");
+        Request request;
         try {
-            reqResponse = httpClientHandler.handle(new RootContext(), request)
-                    .thenAlways(closeSilentlyAsync(request))
-                    .then(closeSilently(mapToJsonValue()), noopExceptionFunction())
-                    .getOrThrow();
-        } catch (InterruptedException | RuntimeException e) {
-            throw new NodeProcessException("Failed to process API request " + request.getUri() + e.getMessage());
+            request = createRequest(url, "GET", headers, span);
+        } catch (NodeProcessException e) {
+            span.setError(e).end();
+            return newExceptionPromise(e);
         }
 
-        return new JSONData(reqResponse);
+        return send(request, span);
     }
 
-    public JSONData delete(String url, Map<String, String> headers) throws NodeProcessException {
-        Request request = createRequest(url, "DELETE", headers);
-
-        JsonValue reqResponse;
+    public Promise<JSONData, NodeProcessException> deleteAsync(String url, Map<String, String> headers) {
+        Span span = Tracer.getInstance().startDetachedSpan("HTTP DELETE");
+        Request request;
         try {
-            reqResponse = httpClientHandler.handle(new RootContext(), request)
-                    .thenAlways(closeSilentlyAsync(request))
-                    .then(closeSilently(mapToJsonValue()), noopExceptionFunction())
-                    .getOrThrow();
-        } catch (InterruptedException | RuntimeException e) {
-            throw new NodeProcessException("Failed to process API request " + request.getUri() + e.getMessage());
+            request = createRequest(url, "DELETE", headers, span);
+        } catch (NodeProcessException e) {
+            span.setError(e).end();
+            return newExceptionPromise(e);
         }
 
-        return new JSONData(reqResponse);
+        return send(request, span);
     }
 
-    public JSONData post(String url, Map<String, String> headers, Map<String, String> data) throws NodeProcessException {
-        Request request = createRequest(url, "POST", headers);
+    public Promise<JSONData, NodeProcessException> postAsync(String url, Map<String, String> headers, Map<String, String> data) {
+        Span span = Tracer.getInstance().startDetachedSpan("HTTP POST");
+        Request request;
+        try {
+            request = createRequest(url, "POST", headers, span);
+        } catch (NodeProcessException e) {
+            span.setError(e).end();
+            return newExceptionPromise(e);
+        }
 
         final Form form = new Form();
         data.forEach(form::add);
         form.toRequestEntity(request);
 
-        JsonValue reqResponse;
-        try {
-            reqResponse = httpClientHandler.handle(new RootContext(), request)
-                    .thenAlways(closeSilentlyAsync(request))
-                    .then(closeSilently(mapToJsonValue()), noopExceptionFunction())
-                    .getOrThrow();
-        } catch (InterruptedException | RuntimeException e) {
-            throw new NodeProcessException("Failed to process API request " + request.getUri() + e.getMessage());
-        }
-
-        return new JSONData(reqResponse);
+        return send(request, span);
     }
 
     public void close() {
@@ -117,7 +128,28 @@ public class HTTPRequest {
         }
     }
 
-    private Request createRequest(String uri, String method, Map<String, String> headers) throws NodeProcessException {
+    private Promise<JSONData, NodeProcessException> send(Request request, Span span) {
+        Promise<Response, NeverThrowsException> response = httpClientHandler.handle(new RootContext(), request)
+                .thenAlways(closeSilentlyAsync(request));
+        if (!span.isRecording()) {
+            return response.then(closeSilently(mapToJsonData()), noopExceptionFunction());
+        }
+
+        return response
+                .thenOnResult(result -> span.setAttribute("http.status_code", String.valueOf(result.getStatus().getCode())))
+                .then(closeSilently(mapToJsonData()), noopExceptionFunction())
+                .thenOnResultOrException(body -> span.end(), e -> span.setError(e).end());
+    }
+
+    private static JSONData await(Promise<JSONData, NodeProcessException> promise, String uri) throws NodeProcessException {
+        try {
+            return promise.getOrThrow();
+        } catch (InterruptedException | RuntimeException e) {
+            throw new NodeProcessException("Failed to process API request " + uri + e.getMessage());
+        }
+    }
+
+    private Request createRequest(String uri, String method, Map<String, String> headers, Span span) throws NodeProcessException {
         Request request;
         try {
             request = new Request().setUri(uri);
@@ -128,17 +160,26 @@ public class HTTPRequest {
         request.setMethod(method);
         request.getHeaders().add("Content-Type", "application/json");
         headers.forEach((k, v) -> request.getHeaders().add(k, v));
+        if (span.isRecording()) {
+            int query = uri.indexOf('?');
+            span.setAttribute("http.url", query < 0 ? uri : uri.substring(0, query));
+            request.getHeaders().add(Tracer.TRACEPARENT_HEADER, span.getTraceparent());
+        }
 
         return request;
     }
 
-    private static Function<Response, JsonValue, NodeProcessException> mapToJsonValue() {
+    private static Function<Response, JSONData, NodeProcessException> mapToJsonData() {
         return response -> {
+            // the client handler reports connection failures as a 502 response holding the cause
+            if (response.getStatus().isServerError() && response.getCause() == null) {
+                throw new HTTPStatusException(response.getStatus().getCode(), "Unable to process request. " + response.getEntity().toString());
+            }
             try {
                 if (response.getStatus().isServerError()) {
                     throw response.getCause();
                 }
-                return json(response.getEntity().getJson());
+                return new JSONData(json(response.getEntity().getJson()), response.getStatus().getCode());
             } catch (Exception e) {
                 throw new NodeProcessException("Unable to process request. " + response.getEntity().toString(), e);
             }
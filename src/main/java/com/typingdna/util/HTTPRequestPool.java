@@ -0,0 +1,139 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Plugin scoped registry of keep-alive HTTP clients. One client (and therefore one connection pool) is kept for every
+ * (apiUrl, requestTimeout, maxConnections) tuple and shared by all the nodes using it. Clients are leased by the API
+ * instances and closed once they have not been leased for {@link Constants#CONNECTION_POOL_IDLE_TIMEOUT} ms, or when
+ * the plugin shuts down.
+ */
+public final class HTTPRequestPool {
+
+    private static final Map<PoolKey, PoolEntry> pools = new HashMap<>();
+    private static LongSupplier clock = System::currentTimeMillis;
+
+    private HTTPRequestPool() {
+    }
+
+    public static synchronized HTTPRequest acquire(String apiUrl, int requestTimeout, int maxConnections) throws NodeProcessException {
+        long now = clock.getAsLong();
+        evictIdle(now);
+
+        PoolKey key = new PoolKey(apiUrl, requestTimeout, maxConnections);
+        PoolEntry entry = pools.get(key);
+        if (entry == null) {
+            Logger.getInstance().debug("Creating HTTP connection pool apiUrl={} timeout={} maxConnections={}", apiUrl, requestTimeout, maxConnections);
+
+            entry = new PoolEntry(new HTTPRequest(requestTimeout, maxConnections));
+            pools.put(key, entry);
+        }
+
+        entry.leases++;
+        entry.lastUsed = now;
+
+        return entry.httpRequest;
+    }
+
+    public static synchronized void release(HTTPRequest httpRequest) {
+        long now = clock.getAsLong();
+
+        for (PoolEntry entry : pools.values()) {
+            if (entry.httpRequest == httpRequest) {
+                entry.leases = Math.max(0, entry.leases - 1);
+                entry.lastUsed = now;
+                break;
+            }
+        }
+
+        evictIdle(now);
+    }
+
+    public static synchronized int size() {
+        return pools.size();
+    }
+
+    public static synchronized void shutdown() {
+        pools.values().forEach(entry -> entry.httpRequest.close());
+        pools.clear();
+    }
+
+    static synchronized void setClock(LongSupplier clock) {
+        HTTPRequestPool.clock = clock;
+    }
+
+    private static void evictIdle(long now) {
+        Iterator<PoolEntry> iterator = pools.values().iterator();
+        while (iterator.hasNext()) {
+            PoolEntry entry = iterator.next();
+            if (entry.leases == 0 && now - entry.lastUsed > Constants.CONNECTION_POOL_IDLE_TIMEOUT) {
+                entry.httpRequest.close();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class PoolEntry {
+        private final HTTPRequest httpRequest;
+        private int leases = 0;
+        private long lastUsed;
+
+        private PoolEntry(HTTPRequest httpRequest) {
+            this.httpRequest = httpRequest;
+        }
+    }
+
+    private static final class PoolKey {
+        private final String apiUrl;
+        private final int requestTimeout;
+        private final int maxConnections;
+
+        private PoolKey(String apiUrl, int requestTimeout, int maxConnections) {
+            this.apiUrl = apiUrl;
+            this.requestTimeout = requestTimeout;
+            this.maxConnections = maxConnections;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PoolKey)) {
+                return false;
+            }
+            PoolKey other = (PoolKey) o;
+            return requestTimeout == other.requestTimeout
+                    && maxConnections == other.maxConnections
+                    && Objects.equals(apiUrl, other.apiUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(apiUrl, requestTimeout, maxConnections);
+        }
+    }
+}
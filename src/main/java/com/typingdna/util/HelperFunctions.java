@@ -19,9 +19,7 @@ package com.typingdna.util;
 
 import org.forgerock.json.JsonValue;
 
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.Charset;
 
 public final class HelperFunctions {
     public static String trimUrl(String url) {
@@ -49,30 +47,55 @@ public final class HelperFunctions {
     }
 
     public static String hashText(String text, String salt, HashAlgorithm algorithm) {
-        String hashedText = "";
-        try {
-            MessageDigest hash = MessageDigest.getInstance(algorithm.toString());
-            hash.update(String.format("%s%s", salt, text).getBytes());
-            hashedText = HelperFunctions.bytesToHex(hash.digest());
-        } catch (NoSuchAlgorithmException e) {
+        return UsernameHasher.getInstance(salt, algorithm).hash(text);
+    }
+
+    private static final int FNV1A32_OFFSET_BASIS = 0x721b5ad4;
+    private static final int FNV1A32_PRIME = 0x01000193;
+
+    public static String fnv1a32(String text) {
+        if (text == null) {
+            return "";
         }
 
-        return hashedText;
+        return fnv1a32(text.toLowerCase().getBytes());
     }
 
-    public static String fnv1a32(String text) {
+    public static String fnv1a32(String text, Charset charset) {
         if (text == null) {
             return "";
         }
 
-        String data = text.toLowerCase();
-        BigInteger hash = new BigInteger("721b5ad4", 16);
+        return fnv1a32(text.toLowerCase().getBytes(charset));
+    }
+
+    private static String fnv1a32(byte[] data) {
+        int hash = FNV1A32_OFFSET_BASIS;
+        for (byte b : data) {
+            hash ^= b & 0xff;
+            hash *= FNV1A32_PRIME;
+        }
+        return Integer.toUnsignedString(hash);
+    }
 
-        for (byte b : data.getBytes()) {
-            hash = hash.xor(BigInteger.valueOf((int) b & 0xff));
-            hash = hash.multiply(new BigInteger("01000193", 16)).mod(new BigInteger("2").pow(32));
+    /**
+     * Prepends a typing pattern to a ';' separated list of typing patterns (the form sent to /verify and /auto) and
+     * keeps only the most recent {@code limit} of them.
+     */
+    public static String pushTypingPattern(String typingPatterns, String typingPattern, int limit) {
+        if (typingPatterns == null || typingPatterns.isEmpty() || limit <= 1) {
+            return typingPattern;
         }
-        return hash.toString();
+
+        int end = -1;
+        for (int i = 1; i < limit; i++) {
+            end = typingPatterns.indexOf(';', end + 1);
+            if (end < 0) {
+                return typingPattern + ';' + typingPatterns;
+            }
+        }
+
+        return typingPattern + ';' + typingPatterns.substring(0, end);
     }
 
     public static <T> T getValueFromJson(JsonValue json, String key, T defaultValue) {
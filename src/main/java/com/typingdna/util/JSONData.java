@@ -21,15 +21,24 @@ import org.forgerock.json.JsonValue;
 
 public class JSONData {
     private final JsonValue jsonValue;
+    private final int status;
 
-    public JSONData(JsonValue jsonValue) {
+    public JSONData(JsonValue jsonValue, int status) {
         this.jsonValue = jsonValue;
+        this.status = status;
     }
 
     public JsonValue getJsonValue() {
         return jsonValue;
     }
 
+    /**
+     * @return the HTTP status code of the response
+     */
+    public int getStatus() {
+        return status;
+    }
+
     public <T> T getValue(String key, T orElse) {
         if (!jsonValue.keys().contains(key)) {
             return orElse;
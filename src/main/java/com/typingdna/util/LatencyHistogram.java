@@ -0,0 +1,107 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rolling histogram of request latencies. Latencies are counted in buckets growing by 25% from 1 ms to about 2
+ * minutes, so percentiles are accurate to within 25%. Two generations of {@link Constants#LATENCY_WINDOW} seconds are
+ * kept, so percentiles follow changes in latency within one to two windows.
+ */
+public final class LatencyHistogram {
+
+    private static final long[] bounds = createBounds();
+
+    private final LongSupplier clock;
+    private final long window = TimeUnit.SECONDS.toNanos(Constants.LATENCY_WINDOW);
+    private long[] current = new long[bounds.length + 1];
+    private long[] previous = new long[bounds.length + 1];
+    private long currentStart;
+
+    public LatencyHistogram() {
+        this(System::nanoTime);
+    }
+
+    LatencyHistogram(LongSupplier clock) {
+        this.clock = clock;
+        this.currentStart = clock.getAsLong();
+    }
+
+    public synchronized void record(long latencyNanos) {
+        rotate();
+
+        int bucket = Arrays.binarySearch(bounds, latencyNanos);
+        current[bucket >= 0 ? bucket : -bucket - 1]++;
+    }
+
+    /**
+     * @return the latency in milliseconds under which the given percentage of the recent requests completed, or -1 if
+     * there are fewer than {@link Constants#LATENCY_MIN_SAMPLES} recent requests.
+     */
+    public synchronized long percentile(int percent) {
+        rotate();
+
+        long total = 0;
+        for (int i = 0; i < current.length; i++) {
+            total += current[i] + previous[i];
+        }
+        if (total < Constants.LATENCY_MIN_SAMPLES) {
+            return -1;
+        }
+
+        long rank = (long) Math.ceil(total * Math.min(Math.max(percent, 1), 100) / 100.0);
+        long count = 0;
+        for (int i = 0; i < current.length; i++) {
+            count += current[i] + previous[i];
+            if (count >= rank) {
+                return TimeUnit.NANOSECONDS.toMillis(i < bounds.length ? bounds[i] : bounds[bounds.length - 1]);
+            }
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(bounds[bounds.length - 1]);
+    }
+
+    private void rotate() {
+        long now = clock.getAsLong();
+        if (now - currentStart < window) {
+            return;
+        }
+
+        long[] recycled = previous;
+        Arrays.fill(recycled, 0);
+        if (now - currentStart >= 2 * window) {
+            Arrays.fill(current, 0);
+        }
+        previous = current;
+        current = recycled;
+        currentStart = now;
+    }
+
+    private static long[] createBounds() {
+        long[] bounds = new long[54];
+        double bound = TimeUnit.MILLISECONDS.toNanos(1);
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = (long) bound;
+            bound *= 1.25;
+        }
+        return bounds;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.util;
+
+/**
+ * Logs every span as a single info line, e.g.
+ * {@code span TDNAAuthentication.performAuthentication trace=... span=... parent=... duration=12ms error=false {...}}.
+ */
+public final class LogSpanExporter implements SpanExporter {
+
+    @Override
+    public void export(Span span) {
+        Logger.getInstance().info("span {} trace={} span={} parent={} duration={}ms error={} {}", span.getName(),
+                span.getTraceId(), span.getSpanId(), span.getParentSpanId(), span.getDurationNanos() / 1000000,
+                span.isError(), span.getAttributes());
+    }
+}
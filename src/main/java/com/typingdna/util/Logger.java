@@ -20,37 +20,171 @@ package com.typingdna.util;
 import com.typingdna.nodes.TypingDNAPlugin;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Plugin logger. Messages use SLF4J {@code {}} placeholders and are only formatted when the level is enabled; the
+ * fixed arity methods avoid allocating an argument array when it is not. Timestamps are added by the logging backend.
+ * <p>
+ * Debug messages are logged (provided the backend's debug level is enabled for the plugin) when debug is switched on
+ * globally, through {@link #setDebug} or the {@value #DEBUG_PROPERTY} system property, or inside a {@link DebugScope}
+ * opened for the current thread, e.g. by a node configured to log its logins or for a traced user.
+ */
 public final class Logger {
-    private static Logger instance = null;
-    private boolean debugEnabled = false;
+    public static final String DEBUG_PROPERTY = "typingdna.debug";
+    public static final String DEBUG_USERNAMES_PROPERTY = "typingdna.debug.usernames";
+
+    private static final String PREFIX = "[TypingDNA] ";
+    private static final DebugScope NO_SCOPE = () -> {};
+
     private final org.slf4j.Logger logger = LoggerFactory.getLogger(TypingDNAPlugin.class);
+    private volatile boolean debugEnabled = Constants.DEBUG;
+    private volatile boolean debugProperty = Boolean.getBoolean(DEBUG_PROPERTY);
+    private final AtomicInteger scopes = new AtomicInteger();
+    private final ThreadLocal<int[]> threadScopes = ThreadLocal.withInitial(() -> new int[1]);
 
     private Logger() {}
 
+    private static final class Holder {
+        private static final Logger instance = new Logger();
+    }
+
     public static Logger getInstance() {
-        if (instance == null) {
-            instance = new Logger();
-        }
-        return instance;
+        return Holder.instance;
     }
 
     public void setDebug(boolean debugEnabled) {
         this.debugEnabled = debugEnabled;
     }
 
+    public boolean isDebugEnabled() {
+        return isDebugRequested() && logger.isDebugEnabled();
+    }
+
+    boolean isDebugRequested() {
+        return debugEnabled || debugProperty || (scopes.get() > 0 && threadScopes.get()[0] > 0);
+    }
+
+    /**
+     * Enables debug messages for the current thread until the scope is closed, if the node has debug logging enabled,
+     * the hashed username is listed in the {@value #DEBUG_USERNAMES_PROPERTY} system property (comma separated) or
+     * falls in the sampled percentage of users. Sampling is done on the hashed username, so a sampled user is logged by
+     * every node of the tree. The {@value #DEBUG_PROPERTY} system property is read again every time.
+     */
+    public DebugScope debugScope(boolean nodeDebug, String hashedUsername, int samplePercent) {
+        debugProperty = Boolean.getBoolean(DEBUG_PROPERTY);
+        if (!nodeDebug && !isTraced(hashedUsername) && !isSampled(hashedUsername, samplePercent)) {
+            return NO_SCOPE;
+        }
+
+        int[] depth = threadScopes.get();
+        depth[0]++;
+        scopes.incrementAndGet();
+        return () -> {
+            depth[0]--;
+            scopes.decrementAndGet();
+        };
+    }
+
+    private static boolean isTraced(String hashedUsername) {
+        String usernames = System.getProperty(DEBUG_USERNAMES_PROPERTY);
+        if (hashedUsername == null || hashedUsername.isEmpty() || usernames == null) {
+            return false;
+        }
+
+        for (String username : usernames.split(",")) {
+            if (username.trim().equalsIgnoreCase(hashedUsername)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSampled(String hashedUsername, int samplePercent) {
+        if (samplePercent <= 0 || hashedUsername == null) {
+            return false;
+        }
+        return samplePercent >= 100 || Math.floorMod(hashedUsername.hashCode(), 100) < samplePercent;
+    }
+
     public void debug(String message) {
-        if (debugEnabled) {
-            logger.debug(String.format("[TypingDNA: %s] %s", new Date().toString(), message));
+        if (isDebugEnabled()) {
+            logger.debug(PREFIX + message);
         }
     }
 
-    public void error(String message) {
-        logger.error(String.format("[TypingDNA: %s] %s", new Date().toString(), message));
+    public void debug(String format, Object arg) {
+        if (isDebugEnabled()) {
+            logger.debug(PREFIX + format, arg);
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            logger.debug(PREFIX + format, arg1, arg2);
+        }
+    }
+
+    public void debug(String format, Object... args) {
+        if (isDebugEnabled()) {
+            logger.debug(PREFIX + format, args);
+        }
     }
 
     public void info(String message) {
-        logger.info(String.format("[TypingDNA: %s] %s", new Date().toString(), message));
+        if (logger.isInfoEnabled()) {
+            logger.info(PREFIX + message);
+        }
+    }
+
+    public void info(String format, Object arg) {
+        if (logger.isInfoEnabled()) {
+            logger.info(PREFIX + format, arg);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (logger.isInfoEnabled()) {
+            logger.info(PREFIX + format, arg1, arg2);
+        }
+    }
+
+    public void info(String format, Object... args) {
+        if (logger.isInfoEnabled()) {
+            logger.info(PREFIX + format, args);
+        }
+    }
+
+    public void error(String message) {
+        if (logger.isErrorEnabled()) {
+            logger.error(PREFIX + message);
+        }
+    }
+
+    public void error(String format, Object arg) {
+        if (logger.isErrorEnabled()) {
+            logger.error(PREFIX + format, arg);
+        }
+    }
+
+    public void error(String format, Object arg1, Object arg2) {
+        if (logger.isErrorEnabled()) {
+            logger.error(PREFIX + format, arg1, arg2);
+        }
+    }
+
+    public void error(String format, Object... args) {
+        if (logger.isErrorEnabled()) {
+            logger.error(PREFIX + format, args);
+        }
+    }
+
+    /**
+     * Ends a debug scope; must be closed on the thread which opened it.
+     */
+    @FunctionalInterface
+    public interface DebugScope extends AutoCloseable {
+        @Override
+        void close();
     }
 }
@@ -28,6 +28,7 @@ public final class Messages {
     public static final String ENROLL_DONE = "Successfully enrolled!";
     public static final String RESET_SUCCESS = "Profile reset successful";
     public static final String RESET_FAIL = "Profile reset failure";
+    public static final String SERVICE_UNAVAILABLE = "Typing verification is temporarily unavailable. Please try again later.";
 
     public static String temporaryError(int code) {
         return String.format("An authentication error occurred, please try again. (code: %d)", code);
@@ -0,0 +1,227 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Plugin wide metrics, exposed through JMX. Recording a call or an outcome only updates striped counters and a
+ * latency histogram found in concurrent maps; the maps are only copied when read through JMX.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.typingdna:type=Metrics";
+
+    public enum Status {
+        SUCCESS("2xx"),
+        CLIENT_ERROR("4xx"),
+        SERVER_ERROR("5xx"),
+        ERROR("error"),
+        REJECTED("rejected");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        public static Status fromHttpStatus(int status) {
+            if (status >= 500) {
+                return SERVER_ERROR;
+            }
+            if (status >= 400) {
+                return CLIENT_ERROR;
+            }
+            return SUCCESS;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final Map<String, CallMetrics> calls = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private volatile boolean registered = false;
+
+    Metrics() {
+    }
+
+    private static final class Holder {
+        private static final Metrics instance = new Metrics();
+    }
+
+    public static Metrics getInstance() {
+        Metrics metrics = Holder.instance;
+        if (!metrics.registered) {
+            metrics.register();
+        }
+        return metrics;
+    }
+
+    public void recordCall(String call, long latencyNanos, Status status, int messageCode) {
+        CallMetrics callMetrics = calls.get(call);
+        if (callMetrics == null) {
+            callMetrics = calls.computeIfAbsent(call, key -> new CallMetrics());
+        }
+        callMetrics.record(latencyNanos, status, messageCode);
+    }
+
+    public void recordOutcome(String outcome) {
+        LongAdder counter = outcomes.get(outcome);
+        if (counter == null) {
+            counter = outcomes.computeIfAbsent(outcome, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void unregisterGauges(String prefix) {
+        gauges.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * Unregisters the MBean and drops all the metrics.
+     */
+    public static void shutdown() {
+        Metrics metrics = Holder.instance;
+        synchronized (metrics) {
+            if (metrics.registered) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+                } catch (JMException e) {
+                    Logger.getInstance().error("Failed to unregister the metrics MBean: {}", e.getMessage());
+                }
+                metrics.registered = false;
+            }
+            metrics.calls.clear();
+            metrics.outcomes.clear();
+            metrics.gauges.clear();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCalls() {
+        Map<String, Long> values = new TreeMap<>();
+        calls.forEach((call, callMetrics) -> {
+            for (Status status : Status.values()) {
+                long count = callMetrics.statuses[status.ordinal()].sum();
+                if (count > 0) {
+                    values.put(String.format("%s %s", call, status), count);
+                }
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getLatencies() {
+        Map<String, Long> values = new TreeMap<>();
+        calls.forEach((call, callMetrics) -> {
+            for (Status status : Status.values()) {
+                LatencyHistogram latency = callMetrics.latencies[status.ordinal()];
+                for (int percentile : new int[]{50, 95, 99}) {
+                    long value = latency.percentile(percentile);
+                    if (value >= 0) {
+                        values.put(String.format("%s %s p%d", call, status, percentile), value);
+                    }
+                }
+            }
+        });
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getMessageCodes() {
+        Map<String, Long> values = new TreeMap<>();
+        calls.forEach((call, callMetrics) -> callMetrics.messageCodes.forEach(
+                (messageCode, count) -> values.put(String.format("%s %d", call, messageCode), count.sum())));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getOutcomes() {
+        Map<String, Long> values = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> values.put(outcome, count.sum()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    private synchronized void register() {
+        if (registered) {
+            return;
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                // left over by a previous version of the plugin
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException | SecurityException e) {
+            Logger.getInstance().error("Failed to register the metrics MBean: {}", e.getMessage());
+        }
+        registered = true;
+    }
+
+    private static final class CallMetrics {
+        private final LongAdder[] statuses = new LongAdder[Status.values().length];
+        private final LatencyHistogram[] latencies = new LatencyHistogram[Status.values().length];
+        private final Map<Integer, LongAdder> messageCodes = new ConcurrentHashMap<>();
+
+        private CallMetrics() {
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        private void record(long latencyNanos, Status status, int messageCode) {
+            statuses[status.ordinal()].increment();
+            latencies[status.ordinal()].record(latencyNanos);
+            if (messageCode >= 0) {
+                LongAdder counter = messageCodes.get(messageCode);
+                if (counter == null) {
+                    counter = messageCodes.computeIfAbsent(messageCode, key -> new LongAdder());
+                }
+                counter.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import java.util.Map;
+
+/**
+ * Metrics of the TypingDNA nodes, registered as {@value Metrics#OBJECT_NAME}.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return the number of API calls, by call (e.g. "POST /verify") and status class (2xx, 4xx, 5xx, error or
+     * rejected, when the circuit breaker is open)
+     */
+    Map<String, Long> getCalls();
+
+    /**
+     * @return the 50th, 95th and 99th percentiles of the recent API call latencies in ms, by call and status class
+     */
+    Map<String, Long> getLatencies();
+
+    /**
+     * @return the number of API responses, by call and TypingDNA message code
+     */
+    Map<String, Long> getMessageCodes();
+
+    /**
+     * @return the number of Decision node outcomes, by outcome
+     */
+    Map<String, Long> getOutcomes();
+
+    /**
+     * @return the current values reported by the plugin components (circuit breakers, endpoints, caches and replay
+     * guards)
+     */
+    Map<String, Long> getGauges();
+}
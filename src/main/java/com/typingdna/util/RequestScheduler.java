@@ -0,0 +1,117 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Time limits and hedging for the requests to the TypingDNA API. A single daemon thread is used for all the
+ * timers; it is created on first use and stopped when the plugin shuts down.
+ */
+public final class RequestScheduler {
+
+    private static ScheduledExecutorService executor = null;
+
+    private RequestScheduler() {
+    }
+
+    /**
+     * @return a promise completed with the request's result, or with a {@link NodeProcessException} if the request
+     * has not completed within the timeout. The request itself is not cancelled.
+     */
+    public static <V> Promise<V, NodeProcessException> withTimeout(Promise<V, NodeProcessException> request, long timeoutMillis) {
+        if (request.isDone()) {
+            return request;
+        }
+
+        PromiseImpl<V, NodeProcessException> result = PromiseImpl.create();
+        request.thenOnResultOrException(result::tryHandleResult, result::tryHandleException);
+        ScheduledFuture<?> timer = getExecutor().schedule(() -> result.tryHandleException(
+                new NodeProcessException(String.format("Request timed out after %d ms", timeoutMillis))),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+        result.thenOnResultOrException(() -> timer.cancel(false));
+
+        return result;
+    }
+
+    /**
+     * Sends the request and, if it has not completed after the delay, sends it a second time.
+     *
+     * @return a promise completed with the first result of the two requests, or with the last exception if both
+     * failed. If the first request fails before the delay, the request is not sent again.
+     */
+    public static <V> Promise<V, NodeProcessException> hedge(Supplier<Promise<V, NodeProcessException>> request, long delayMillis) {
+        Promise<V, NodeProcessException> first = request.get();
+        if (first.isDone()) {
+            return first;
+        }
+
+        PromiseImpl<V, NodeProcessException> result = PromiseImpl.create();
+        AtomicInteger pending = new AtomicInteger(1);
+        first.thenOnResultOrException(result::tryHandleResult, e -> {
+            if (pending.decrementAndGet() <= 0) {
+                result.tryHandleException(e);
+            }
+        });
+
+        ScheduledFuture<?> timer = getExecutor().schedule(() -> {
+            if (result.isDone() || pending.getAndIncrement() <= 0) {
+                return;
+            }
+
+            Logger.getInstance().debug("Hedging request not completed after {} ms", delayMillis);
+            request.get().thenOnResultOrException(result::tryHandleResult, e -> {
+                if (pending.decrementAndGet() <= 0) {
+                    result.tryHandleException(e);
+                }
+            });
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        result.thenOnResultOrException(() -> timer.cancel(false));
+
+        return result;
+    }
+
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "typingdna-request-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            executor = scheduler;
+        }
+        return executor;
+    }
+}
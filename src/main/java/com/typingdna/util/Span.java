@@ -0,0 +1,167 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.util;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A timed operation of a trace, created by the {@link Tracer}. When tracing is disabled every span is {@link #NOOP},
+ * which records nothing.
+ */
+public class Span implements AutoCloseable {
+
+    public static final Span NOOP = new Span();
+
+    private final Tracer tracer;
+    private final String name;
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final Span parent;
+    private final boolean scoped;
+    private final long startMillis;
+    private final long start;
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private volatile long durationNanos = -1;
+    private volatile boolean error = false;
+
+    private Span() {
+        this.tracer = null;
+        this.name = "";
+        this.traceId = "";
+        this.spanId = "";
+        this.parentSpanId = "";
+        this.parent = null;
+        this.scoped = false;
+        this.startMillis = 0;
+        this.start = 0;
+    }
+
+    Span(Tracer tracer, String name, Span parent, boolean scoped) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.tracer = tracer;
+        this.name = name;
+        this.traceId = parent != null ? parent.traceId : toHex(random.nextLong()) + toHex(random.nextLong());
+        this.spanId = toHex(random.nextLong());
+        this.parentSpanId = parent != null ? parent.spanId : "";
+        this.parent = parent;
+        this.scoped = scoped;
+        this.startMillis = System.currentTimeMillis();
+        this.start = System.nanoTime();
+    }
+
+    public boolean isRecording() {
+        return this != NOOP;
+    }
+
+    public Span setAttribute(String key, String value) {
+        if (this != NOOP && value != null) {
+            synchronized (attributes) {
+                attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    public Span setError(Throwable throwable) {
+        if (this != NOOP) {
+            error = true;
+            setAttribute("error", throwable.getClass().getSimpleName() + ": " + throwable.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span; it may be called from any thread, only the first call counts. A span started by
+     * {@link Tracer#startSpan} must be ended on the thread which started it, as its parent becomes current again.
+     */
+    public void end() {
+        if (this == NOOP || !ended.compareAndSet(false, true)) {
+            return;
+        }
+
+        durationNanos = System.nanoTime() - start;
+        tracer.end(this);
+    }
+
+    @Override
+    public void close() {
+        end();
+    }
+
+    /**
+     * @return the W3C trace context of this span, sent as the {@value Tracer#TRACEPARENT_HEADER} header
+     */
+    public String getTraceparent() {
+        return String.format("00-%s-%s-01", traceId, spanId);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return the duration of the span in nanoseconds, or -1 while it has not ended
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    public Map<String, String> getAttributes() {
+        synchronized (attributes) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(attributes));
+        }
+    }
+
+    Span getParent() {
+        return parent;
+    }
+
+    boolean isScoped() {
+        return scoped;
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -27,32 +27,44 @@ import java.util.stream.Stream;
 
 import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
 
+/**
+ * The node's view of the tree state. The JsonValues it is created with are never modified: they are copied once, on
+ * the first write or when a snapshot is taken, and the copy is then used for both reads and writes. A snapshot hands
+ * that copy over as it is; only a write made after a snapshot copies it again.
+ */
 public final class State {
 
-    private JsonValue sharedState;
-    private JsonValue transientState;
+    private final CopyOnWriteJson sharedState;
+    private final CopyOnWriteJson transientState;
     private List<? extends Callback> callbacks;
 
     public State(JsonValue sharedState, JsonValue transientState, List<? extends Callback> callbacks) {
-        this.sharedState = sharedState;
-        this.transientState = transientState;
+        this.sharedState = new CopyOnWriteJson(sharedState);
+        this.transientState = new CopyOnWriteJson(transientState);
         this.callbacks = callbacks;
     }
 
+    /**
+     * @return a snapshot of the shared state, which is not affected by later changes to this State. It is meant to be
+     * handed to AM as it is, once the node is done with the state, and must not be modified.
+     */
     public JsonValue getSharedState() {
-        return sharedState.copy();
+        return sharedState.snapshot();
     }
 
+    /**
+     * @return a snapshot of the transient state, see {@link #getSharedState()}.
+     */
     public JsonValue getTransientState() {
-        return transientState.copy();
+        return transientState.snapshot();
     }
 
     public String getUsername() {
-        return sharedState.get(USERNAME).asString();
+        return sharedState.read().get(USERNAME).asString();
     }
 
     public String getTypingPattern() {
-        String typingPattern = transientState.get(Constants.TYPING_PATTERN).asString();
+        String typingPattern = transientState.read().get(Constants.TYPING_PATTERN).asString();
         if (typingPattern == null) {
             typingPattern = "";
         }
@@ -60,75 +72,79 @@ public final class State {
     }
 
     public void setTypingPattern(String typingPattern) {
-        transientState.put(Constants.TYPING_PATTERN, typingPattern);
+        transientState.write().put(Constants.TYPING_PATTERN, typingPattern);
     }
 
     public String getPreviousTypingPatterns() {
-        return transientState.get(Constants.PREVIOUS_TYPING_PATTERNS).asString();
+        return transientState.read().get(Constants.PREVIOUS_TYPING_PATTERNS).asString();
     }
 
     public void setPreviousTypingPatterns(String previousTypingPatterns) {
-        transientState.put(Constants.PREVIOUS_TYPING_PATTERNS, previousTypingPatterns);
+        transientState.write().put(Constants.PREVIOUS_TYPING_PATTERNS, previousTypingPatterns);
     }
 
     public String getTextId() {
-        return transientState.get(Constants.TEXT_ID).asString();
+        return transientState.read().get(Constants.TEXT_ID).asString();
     }
 
     public void setTextId(String textId) {
-        transientState.put(Constants.TEXT_ID, textId);
+        transientState.write().put(Constants.TEXT_ID, textId);
     }
 
     public DeviceType getDeviceType() {
-        int deviceTypeValue = sharedState.get(Constants.DEVICE_TYPE).asInteger();
+        int deviceTypeValue = sharedState.read().get(Constants.DEVICE_TYPE).asInteger();
         return deviceTypeValue == 0 ? DeviceType.DESKTOP : DeviceType.MOBILE;
     }
 
     public void setDeviceType(DeviceType deviceType) {
-        sharedState.put(Constants.DEVICE_TYPE, deviceType.ordinal());
+        sharedState.write().put(Constants.DEVICE_TYPE, deviceType.ordinal());
     }
 
     public int getPatternsEnrolled() {
-        Integer patternsEnrolled = sharedState.get(Constants.PATTERNS_ENROLLED).asInteger();
+        Integer patternsEnrolled = sharedState.read().get(Constants.PATTERNS_ENROLLED).asInteger();
         return (patternsEnrolled) == null ? 0 : patternsEnrolled;
     }
 
     public void setPatternsEnrolled(int patternsEnrolled) {
-        sharedState.put(Constants.PATTERNS_ENROLLED, patternsEnrolled);
+        sharedState.write().put(Constants.PATTERNS_ENROLLED, patternsEnrolled);
     }
 
     public int getRetries() {
-        Integer retries = sharedState.get(Constants.VERIFY_RETRIES).asInteger();
+        Integer retries = sharedState.read().get(Constants.VERIFY_RETRIES).asInteger();
         return (retries == null) ? 0 : retries;
     }
 
     public void incrementRetries() {
-        sharedState.put(Constants.VERIFY_RETRIES, getRetries() + 1);
+        sharedState.write().put(Constants.VERIFY_RETRIES, getRetries() + 1);
     }
 
     public ActionType getPreviousAction() {
-        Integer actionType = sharedState.get(Constants.PREVIOUS_ACTION).asInteger();
+        Integer actionType = sharedState.read().get(Constants.PREVIOUS_ACTION).asInteger();
         return ActionType.toActionType(actionType == null ? -1 : actionType);
     }
 
     public void setPreviousAction(ActionType previousAction) {
-        sharedState.put(Constants.PREVIOUS_ACTION, previousAction.getAction());
+        sharedState.write().put(Constants.PREVIOUS_ACTION, previousAction.getAction());
     }
 
     public String getTextToEnter() {
-        return sharedState.get(Constants.TEXT_TO_ENTER).asString();
+        return sharedState.read().get(Constants.TEXT_TO_ENTER).asString();
     }
 
     public void setTextToEnter(String textToEnter) {
-        sharedState.put(Constants.TEXT_TO_ENTER, textToEnter);
+        sharedState.write().put(Constants.TEXT_TO_ENTER, textToEnter);
+    }
+
+    public boolean hasPreviousAction() {
+        return !sharedState.read().get(Constants.PREVIOUS_ACTION).isNull();
     }
 
     public String getMessage() {
-        return sharedState.get(Constants.MESSAGE).asString();
+        return sharedState.read().get(Constants.MESSAGE).asString();
     }
 
     public void setMessage(String message) {
-        sharedState.put(Constants.MESSAGE, message);
+        sharedState.write().put(Constants.MESSAGE, message);
     }
 
     public <T extends Callback> Stream<T> getCallbacks(Class<T> type) {
@@ -137,4 +153,34 @@ public final class State {
                 .filter((c) -> type.isAssignableFrom(c.getClass()))
                 .map(type::cast);
     }
+
+    private static final class CopyOnWriteJson {
+        private final JsonValue original;
+        private JsonValue current = null;
+        private boolean snapshotTaken = false;
+
+        private CopyOnWriteJson(JsonValue original) {
+            this.original = original;
+        }
+
+        private JsonValue read() {
+            return current != null ? current : original;
+        }
+
+        private JsonValue write() {
+            if (current == null || snapshotTaken) {
+                current = read().copy();
+                snapshotTaken = false;
+            }
+            return current;
+        }
+
+        private JsonValue snapshot() {
+            if (current == null) {
+                current = original.copy();
+            }
+            snapshotTaken = true;
+            return current;
+        }
+    }
 }
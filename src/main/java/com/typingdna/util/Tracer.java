@@ -0,0 +1,142 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Plugin tracer. Spans are timed around the nodes' {@code process}, the authentication and every API and HTTP
+ * request, correlated by the request identifier ({@value #REQUEST_ID}) and the node id ({@value #NODE_ID}), and the
+ * trace context is sent to the TypingDNA API in the {@value #TRACEPARENT_HEADER} header.
+ * <p>
+ * Ended spans are handed to the {@link SpanExporter} set through {@link #setExporter} or named by the
+ * {@value #EXPORTER_PROPERTY} system property ({@code log} or the class name of an exporter with a public no-arg
+ * constructor). Tracing is disabled by default: every span is then {@link Span#NOOP} and costs a volatile read.
+ */
+public final class Tracer {
+    public static final String EXPORTER_PROPERTY = "typingdna.tracing.exporter";
+    public static final String TRACEPARENT_HEADER = "traceparent";
+    public static final String REQUEST_ID = "typingdna.request_id";
+    public static final String NODE_ID = "typingdna.node_id";
+
+    private volatile SpanExporter exporter = createExporter(System.getProperty(EXPORTER_PROPERTY));
+    private final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+
+    private Tracer() {}
+
+    private static final class Holder {
+        private static final Tracer instance = new Tracer();
+    }
+
+    public static Tracer getInstance() {
+        return Holder.instance;
+    }
+
+    public void setExporter(SpanExporter exporter) {
+        this.exporter = exporter != null ? exporter : SpanExporter.NOOP;
+    }
+
+    public boolean isEnabled() {
+        return exporter != SpanExporter.NOOP;
+    }
+
+    /**
+     * Starts a span which is the current span of the thread until it is closed, on the same thread.
+     */
+    public Span startSpan(String name) {
+        if (!isEnabled()) {
+            return Span.NOOP;
+        }
+
+        Span span = new Span(this, name, currentSpan.get(), true);
+        currentSpan.set(span);
+        return span;
+    }
+
+    /**
+     * Starts a child of the current span which does not become current, for an operation ending on another thread.
+     */
+    public Span startDetachedSpan(String name) {
+        if (!isEnabled()) {
+            return Span.NOOP;
+        }
+
+        return new Span(this, name, currentSpan.get(), false);
+    }
+
+    /**
+     * @return the current span of the thread, or {@link Span#NOOP}
+     */
+    public Span currentSpan() {
+        Span span = currentSpan.get();
+        return span != null ? span : Span.NOOP;
+    }
+
+    /**
+     * Calls the supplier with the given span as the current span, e.g. to parent the spans started by a promise
+     * callback or a timer thread.
+     */
+    public <T> T withSpan(Span span, Supplier<T> supplier) {
+        if (!span.isRecording()) {
+            return supplier.get();
+        }
+
+        Span previous = currentSpan.get();
+        currentSpan.set(span);
+        try {
+            return supplier.get();
+        } finally {
+            if (previous != null) {
+                currentSpan.set(previous);
+            } else {
+                currentSpan.remove();
+            }
+        }
+    }
+
+    void end(Span span) {
+        if (span.isScoped() && currentSpan.get() == span) {
+            if (span.getParent() != null) {
+                currentSpan.set(span.getParent());
+            } else {
+                currentSpan.remove();
+            }
+        }
+
+        try {
+            exporter.export(span);
+        } catch (RuntimeException e) {
+            Logger.getInstance().error("Failed to export span {}: {}", span.getName(), e.getMessage());
+        }
+    }
+
+    static SpanExporter createExporter(String exporter) {
+        if (exporter == null || exporter.trim().isEmpty()) {
+            return SpanExporter.NOOP;
+        }
+        if ("log".equalsIgnoreCase(exporter.trim())) {
+            return new LogSpanExporter();
+        }
+
+        try {
+            return (SpanExporter) Class.forName(exporter.trim()).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            Logger.getInstance().error("Failed to create the span exporter {}: {}", exporter, e.getMessage());
+            return SpanExporter.NOOP;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hashes the usernames sent to the TypingDNA API with a given salt and algorithm. The digests are kept per thread, the
+ * salt is encoded once and the most recent hashes are cached, as the same user usually goes through several nodes of
+ * a tree. The cache is kept in two generations of concurrent maps, each holding half of the entries: once the current
+ * generation is full it replaces the previous one, and hashes found in the previous generation are moved to the
+ * current one. The hashes are the same as {@code hash(salt + username)} in the platform charset.
+ */
+public final class UsernameHasher {
+
+    private static final Map<HashAlgorithm, ThreadLocal<MessageDigest>> digests = new EnumMap<>(HashAlgorithm.class);
+    private static final Map<Key, UsernameHasher> hashers = new ConcurrentHashMap<>();
+
+    static {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            digests.put(algorithm, ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance(algorithm.toString());
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalArgumentException(String.format("Hash algorithm %s is not available", algorithm), e);
+                }
+            }));
+        }
+    }
+
+    private final String salt;
+    private final byte[] saltBytes;
+    private final ThreadLocal<MessageDigest> digest;
+    private final int generationSize;
+    private volatile Map<String, String> current;
+    private volatile Map<String, String> previous;
+
+    UsernameHasher(String salt, HashAlgorithm algorithm, int cacheSize) {
+        this.salt = String.valueOf(salt);
+        // the salt can only be encoded on its own if the charset encodes a string one character at a time
+        this.saltBytes = isStateless(Charset.defaultCharset()) ? this.salt.getBytes() : null;
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Hash algorithm is not set");
+        }
+        this.digest = digests.get(algorithm);
+        this.digest.get();
+        this.generationSize = cacheSize <= 0 ? 0 : Math.max(cacheSize / 2, 1);
+        this.current = cacheSize <= 0 ? null : new ConcurrentHashMap<>();
+        this.previous = cacheSize <= 0 ? null : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the algorithm is not set or not available
+     */
+    public static UsernameHasher getInstance(String salt, HashAlgorithm algorithm) {
+        return hashers.computeIfAbsent(new Key(salt, algorithm),
+                key -> new UsernameHasher(salt, algorithm, Constants.USERNAME_HASH_CACHE_SIZE));
+    }
+
+    public static void clear() {
+        hashers.clear();
+    }
+
+    public String hash(String username) {
+        String text = String.valueOf(username);
+        if (generationSize > 0) {
+            String hash = current.get(text);
+            if (hash != null) {
+                return hash;
+            }
+            hash = previous.get(text);
+            if (hash != null) {
+                cache(text, hash);
+                return hash;
+            }
+        }
+
+        MessageDigest messageDigest = digest.get();
+        messageDigest.reset();
+        if (saltBytes != null) {
+            messageDigest.update(saltBytes);
+            messageDigest.update(text.getBytes());
+        } else {
+            messageDigest.update((salt + text).getBytes());
+        }
+        String hash = HelperFunctions.bytesToHex(messageDigest.digest());
+
+        if (generationSize > 0) {
+            cache(text, hash);
+        }
+
+        return hash;
+    }
+
+    private void cache(String username, String hash) {
+        if (current.size() >= generationSize) {
+            synchronized (this) {
+                if (current.size() >= generationSize) {
+                    previous = current;
+                    current = new ConcurrentHashMap<>();
+                }
+            }
+        }
+        current.put(username, hash);
+    }
+
+    private static boolean isStateless(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    private static final class Key {
+        private final String salt;
+        private final HashAlgorithm algorithm;
+
+        private Key(String salt, HashAlgorithm algorithm) {
+            this.salt = salt;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return algorithm == other.algorithm && Objects.equals(salt, other.salt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(salt, algorithm);
+        }
+    }
+}
@@ -17,17 +17,55 @@
 
 package com.typingdna;
 
+import com.typingdna.api.CircuitBreakerTest;
+import com.typingdna.api.EndpointRouterTest;
+import com.typingdna.api.PatternCountCacheTest;
+import com.typingdna.api.TypingDNAAPIIntegrationTest;
+import com.typingdna.api.TypingDNAAPIRegistryTest;
+import com.typingdna.api.TypingDNAAPITest;
 import com.typingdna.core.RecorderIntegrationTest;
+import com.typingdna.core.RecorderScriptTemplateTest;
 import com.typingdna.core.ShortPhraseIntegrationTest;
 import com.typingdna.core.DecisionIntegrationTest;
+import com.typingdna.core.DecisionParallelPreCheckIntegrationTest;
+import com.typingdna.core.businesslogic.ReplayGuardTest;
+import com.typingdna.core.businesslogic.TypingPatternParserTest;
+import com.typingdna.util.HelperFunctionsTest;
+import com.typingdna.util.HTTPRequestPoolTest;
+import com.typingdna.util.LatencyHistogramTest;
+import com.typingdna.util.LoggerTest;
+import com.typingdna.util.MetricsTest;
+import com.typingdna.util.TracerTest;
+import com.typingdna.util.RequestSchedulerTest;
+import com.typingdna.util.StateTest;
+import com.typingdna.util.UsernameHasherTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
         RecorderIntegrationTest.class,
+        RecorderScriptTemplateTest.class,
         ShortPhraseIntegrationTest.class,
-        DecisionIntegrationTest.class
+        DecisionIntegrationTest.class,
+        DecisionParallelPreCheckIntegrationTest.class,
+        TypingPatternParserTest.class,
+        ReplayGuardTest.class,
+        CircuitBreakerTest.class,
+        EndpointRouterTest.class,
+        PatternCountCacheTest.class,
+        TypingDNAAPITest.class,
+        TypingDNAAPIIntegrationTest.class,
+        TypingDNAAPIRegistryTest.class,
+        HelperFunctionsTest.class,
+        HTTPRequestPoolTest.class,
+        StateTest.class,
+        LatencyHistogramTest.class,
+        RequestSchedulerTest.class,
+        UsernameHasherTest.class,
+        LoggerTest.class,
+        MetricsTest.class,
+        TracerTest.class
 })
 public class IntegrationTests {
 }
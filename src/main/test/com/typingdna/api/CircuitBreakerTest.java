@@ -0,0 +1,180 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.util.Constants;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.forgerock.util.promise.Promises.newExceptionPromise;
+import static org.forgerock.util.promise.Promises.newResultPromise;
+
+public class CircuitBreakerTest {
+
+    private long now;
+    private CircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        circuitBreaker = new CircuitBreaker("https://api.typingdna.com", 30, 4000, () -> now);
+    }
+
+    @Test
+    public void test_Closed_BelowMinimumCalls() {
+        for (int i = 0; i < Constants.CIRCUIT_BREAKER_MINIMUM_CALLS - 1; i++) {
+            long permit = circuitBreaker.tryAcquire();
+            Assert.assertTrue("requests must be allowed", permit != CircuitBreaker.NO_PERMIT);
+            circuitBreaker.record(permit, true);
+        }
+
+        Assert.assertEquals("state must be CLOSED", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_Closed_FewFailures() {
+        for (int i = 0; i < 100; i++) {
+            circuitBreaker.record(circuitBreaker.tryAcquire(), i % 3 == 0);
+        }
+
+        Assert.assertEquals("state must be CLOSED", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_Open_HalfOpen_Closed() {
+        open();
+
+        Assert.assertEquals("state must be OPEN", CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertEquals("requests must not be allowed", CircuitBreaker.NO_PERMIT, circuitBreaker.tryAcquire());
+
+        now += TimeUnit.SECONDS.toNanos(30);
+        Assert.assertEquals("state must be HALF_OPEN", CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        long trial = circuitBreaker.tryAcquire();
+        Assert.assertTrue("a trial request must be allowed", trial != CircuitBreaker.NO_PERMIT);
+        Assert.assertEquals("a single trial request must be allowed", CircuitBreaker.NO_PERMIT, circuitBreaker.tryAcquire());
+
+        circuitBreaker.record(trial, false);
+        Assert.assertEquals("state must be CLOSED", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue("requests must be allowed", circuitBreaker.tryAcquire() != CircuitBreaker.NO_PERMIT);
+    }
+
+    @Test
+    public void test_HalfOpen_TrialFails() {
+        open();
+
+        now += TimeUnit.SECONDS.toNanos(30);
+        long trial = circuitBreaker.tryAcquire();
+        Assert.assertTrue("a trial request must be allowed", trial != CircuitBreaker.NO_PERMIT);
+        circuitBreaker.record(trial, true);
+
+        Assert.assertEquals("state must be OPEN", CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertEquals("requests must not be allowed", CircuitBreaker.NO_PERMIT, circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void test_HalfOpen_StragglerDoesNotDecideTrial() {
+        long straggler = circuitBreaker.tryAcquire();
+        open();
+
+        now += TimeUnit.SECONDS.toNanos(30);
+        long trial = circuitBreaker.tryAcquire();
+        Assert.assertTrue("a trial request must be allowed", trial != CircuitBreaker.NO_PERMIT);
+
+        circuitBreaker.record(straggler, false);
+        Assert.assertEquals("a request sent while CLOSED must not close the circuit", CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertEquals("a request sent while CLOSED must not admit a second trial", CircuitBreaker.NO_PERMIT, circuitBreaker.tryAcquire());
+
+        circuitBreaker.record(straggler, true);
+        Assert.assertEquals("a request sent while CLOSED must not reopen the circuit", CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.record(trial, false);
+        Assert.assertEquals("the trial must close the circuit", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.record(straggler, true);
+        Assert.assertEquals("a request sent before the circuit opened must not count once it closed again", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_Call_SlowRequestsOpen() throws Exception {
+        for (int i = 0; i < Constants.CIRCUIT_BREAKER_MINIMUM_CALLS; i++) {
+            circuitBreaker.call(() -> {
+                now += TimeUnit.MILLISECONDS.toNanos(5000);
+                return newResultPromise("body");
+            }).getOrThrow();
+        }
+
+        Assert.assertEquals("state must be OPEN", CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_Call_SlowCallThresholdPerRequest() throws Exception {
+        for (int i = 0; i < Constants.CIRCUIT_BREAKER_MINIMUM_CALLS; i++) {
+            circuitBreaker.call(() -> {
+                now += TimeUnit.MILLISECONDS.toNanos(5000);
+                return newResultPromise("body");
+            }, () -> TimeUnit.MILLISECONDS.toNanos(6000)).getOrThrow();
+        }
+        Assert.assertEquals("requests within their own threshold must not open the circuit", CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        for (int i = 0; i < Constants.CIRCUIT_BREAKER_MINIMUM_CALLS; i++) {
+            circuitBreaker.call(() -> {
+                now += TimeUnit.MILLISECONDS.toNanos(500);
+                return newResultPromise("body");
+            }, () -> TimeUnit.MILLISECONDS.toNanos(200)).getOrThrow();
+        }
+        Assert.assertEquals("requests over their own threshold must open the circuit", CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_Call_Open_FailsWithoutRequest() {
+        AtomicInteger requests = new AtomicInteger();
+        for (int i = 0; i < Constants.CIRCUIT_BREAKER_MINIMUM_CALLS; i++) {
+            circuitBreaker.call(() -> {
+                requests.incrementAndGet();
+                return newExceptionPromise(new NodeProcessException("timeout"));
+            });
+        }
+
+        Assert.assertThrows(CircuitBreakerOpenException.class, () -> circuitBreaker.call(() -> {
+            requests.incrementAndGet();
+            return newResultPromise("body");
+        }).getOrThrow());
+        Assert.assertEquals("open circuit must not send requests", Constants.CIRCUIT_BREAKER_MINIMUM_CALLS, requests.get());
+        Assert.assertEquals("rejected must be 1", 1, circuitBreaker.getRejected());
+    }
+
+    @Test
+    public void test_ForEndpoint() {
+        Assert.assertSame("nodes using the same endpoint must share the circuit breaker",
+                CircuitBreaker.forEndpoint("https://api.typingdna.com", 30, 4000), CircuitBreaker.forEndpoint("https://api.typingdna.com", 30, 4000));
+        Assert.assertNotSame("other endpoints must have their own circuit breaker",
+                CircuitBreaker.forEndpoint("https://api.typingdna.com", 30, 4000), CircuitBreaker.forEndpoint("https://us-api.typingdna.com", 30, 4000));
+        Assert.assertSame("open duration 0 must disable the circuit breaker", CircuitBreaker.disabled(), CircuitBreaker.forEndpoint("https://api.typingdna.com", 0, 4000));
+    }
+
+    private void open() {
+        for (int i = 0; i < Constants.CIRCUIT_BREAKER_MINIMUM_CALLS; i++) {
+            circuitBreaker.record(circuitBreaker.tryAcquire(), true);
+        }
+    }
+}
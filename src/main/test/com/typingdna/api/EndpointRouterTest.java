@@ -0,0 +1,242 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.util.Metrics;
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.Promise;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.forgerock.util.promise.Promises.newExceptionPromise;
+import static org.forgerock.util.promise.Promises.newResultPromise;
+
+public class EndpointRouterTest {
+
+    private static final String PRIMARY = "https://typingdna-1.example.com";
+    private static final String REPLICA = "https://typingdna-2.example.com";
+
+    private long now;
+    private EndpointRouter router;
+    private List<String> sent;
+    private Map<String, Long> latencies;
+    private List<String> unreachable;
+    private List<String> failing;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        router = new EndpointRouter(Arrays.asList(PRIMARY, REPLICA), () -> now);
+        sent = new ArrayList<>();
+        latencies = new HashMap<>();
+        unreachable = new ArrayList<>();
+        failing = new ArrayList<>();
+    }
+
+    @Test
+    public void test_ParseUrls() {
+        Assert.assertEquals("urls must be split and trimmed", Arrays.asList(PRIMARY, REPLICA), EndpointRouter.parseUrls(" https://typingdna-1.example.com/, https://typingdna-2.example.com ,"));
+        Assert.assertEquals("duplicate urls must be dropped", Arrays.asList(PRIMARY), EndpointRouter.parseUrls(PRIMARY + "," + PRIMARY + "/"));
+        Assert.assertEquals("a single url must be kept", Arrays.asList(PRIMARY), EndpointRouter.parseUrls(PRIMARY));
+    }
+
+    @Test
+    public void test_Send_FastestEndpoint() throws Exception {
+        latencies.put(PRIMARY, 300L);
+        latencies.put(REPLICA, 100L);
+
+        send();
+        send();
+        sent.clear();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("response must come from the fastest endpoint", REPLICA, send());
+        }
+        Assert.assertEquals("only the fastest endpoint must be called", 10, sent.stream().filter(REPLICA::equals).count());
+
+        latencies.put(REPLICA, 1000L);
+        for (int i = 0; i < 10; i++) {
+            send();
+        }
+        Assert.assertEquals("requests must move to the endpoint which became the fastest", PRIMARY, send());
+    }
+
+    @Test
+    public void test_Send_FailingEndpointPenalized() throws Exception {
+        latencies.put(PRIMARY, 100L);
+        latencies.put(REPLICA, 150L);
+        send();
+        send();
+
+        failing.add(PRIMARY);
+        for (int i = 0; i < 5; i++) {
+            try {
+                send();
+            } catch (NodeProcessException e) {
+                // failures are not retried on the other endpoint
+            }
+        }
+        sent.clear();
+
+        Assert.assertEquals("requests must move away from the failing endpoint", REPLICA, send());
+        Assert.assertTrue("failing endpoint must not be marked unreachable", endpoint(PRIMARY).isHealthy());
+    }
+
+    @Test
+    public void test_Send_FailoverOnConnectFailure() throws Exception {
+        latencies.put(PRIMARY, 100L);
+        latencies.put(REPLICA, 300L);
+        send();
+        send();
+        sent.clear();
+
+        unreachable.add(PRIMARY);
+        Assert.assertEquals("response must come from the next endpoint", REPLICA, send());
+        Assert.assertEquals("both endpoints must be called", Arrays.asList(PRIMARY, REPLICA), sent);
+        Assert.assertFalse("endpoint must be marked unreachable", endpoint(PRIMARY).isHealthy());
+
+        sent.clear();
+        Assert.assertEquals("unreachable endpoint must be skipped", REPLICA, send());
+        Assert.assertEquals("a single request must be sent", Arrays.asList(REPLICA), sent);
+
+        unreachable.clear();
+        now += TimeUnit.SECONDS.toNanos(5);
+        sent.clear();
+        Assert.assertEquals("endpoint must be retried after the delay", PRIMARY, send());
+        Assert.assertTrue("endpoint must be healthy again", endpoint(PRIMARY).isHealthy());
+    }
+
+    @Test
+    public void test_Send_RetryDelayBacksOff() throws Exception {
+        unreachable.add(PRIMARY);
+        Assert.assertEquals("response must come from the next endpoint", REPLICA, send());
+
+        now += TimeUnit.SECONDS.toNanos(5);
+        sent.clear();
+        Assert.assertEquals("response must come from the next endpoint", REPLICA, send());
+        Assert.assertEquals("endpoint must be retried after the delay", Arrays.asList(PRIMARY, REPLICA), sent);
+
+        now += TimeUnit.SECONDS.toNanos(5);
+        sent.clear();
+        send();
+        Assert.assertEquals("endpoint must not be retried before the longer delay", Arrays.asList(REPLICA), sent);
+
+        unreachable.clear();
+        now += TimeUnit.SECONDS.toNanos(5);
+        sent.clear();
+        Assert.assertEquals("endpoint must be retried after the longer delay", PRIMARY, send());
+    }
+
+    @Test
+    public void test_Send_AllEndpointsUnreachable() {
+        unreachable.add(PRIMARY);
+        unreachable.add(REPLICA);
+
+        Assert.assertThrows(NodeProcessException.class, this::send);
+        Assert.assertEquals("all the endpoints must be called", 2, sent.size());
+        Assert.assertThrows(NodeProcessException.class, this::send);
+        Assert.assertEquals("all the endpoints must be called again", 4, sent.size());
+    }
+
+    @Test
+    public void test_Candidates_UnreachableOrderedByRetry() throws Exception {
+        unreachable.add(PRIMARY);
+        send();
+        unreachable.add(REPLICA);
+        Assert.assertThrows(NodeProcessException.class, this::send);
+
+        Assert.assertEquals("the first endpoint to be retried must be tried first",
+                Arrays.asList(REPLICA, PRIMARY), candidateUrls());
+
+        now += TimeUnit.SECONDS.toNanos(6);
+        Assert.assertEquals("the endpoint due for a retry must be tried first",
+                Arrays.asList(REPLICA, PRIMARY), candidateUrls());
+        Assert.assertFalse("the other endpoint must still be unreachable", endpoint(PRIMARY).isHealthy());
+    }
+
+    @Test
+    public void test_Send_SingleEndpoint() throws Exception {
+        router = new EndpointRouter(Arrays.asList(PRIMARY), () -> now);
+        unreachable.add(PRIMARY);
+
+        Assert.assertThrows(NodeProcessException.class, this::send);
+        Assert.assertThrows(NodeProcessException.class, this::send);
+        Assert.assertEquals("the only endpoint must always be called", Arrays.asList(PRIMARY, PRIMARY), sent);
+    }
+
+    private String send() throws Exception {
+        Promise<String, NodeProcessException> result = router.send(url -> {
+            sent.add(url);
+            now += TimeUnit.MILLISECONDS.toNanos(latencies.getOrDefault(url, 100L));
+            if (unreachable.contains(url)) {
+                return newExceptionPromise(new NodeProcessException("Unable to process request", new ConnectException("Connection refused")));
+            }
+            if (failing.contains(url)) {
+                return newExceptionPromise(new NodeProcessException("Unable to process request"));
+            }
+            return newResultPromise(url);
+        });
+        return result.getOrThrow();
+    }
+
+    @Test
+    public void test_LatencyHistogram_PerEndpointAndCall() {
+        Assert.assertSame("the same call to the same endpoint must share the histogram", router.getLatencyHistogram(PRIMARY, "POST /verify"), router.getLatencyHistogram(PRIMARY, "POST /verify"));
+        Assert.assertNotSame("calls must have their own histograms", router.getLatencyHistogram(PRIMARY, "POST /verify"), router.getLatencyHistogram(PRIMARY, "GET /user"));
+        Assert.assertNotSame("endpoints must have their own histograms", router.getLatencyHistogram(PRIMARY, "POST /verify"), router.getLatencyHistogram(REPLICA, "POST /verify"));
+    }
+
+    @Test
+    public void test_ForUrls_ReleasedWithLastClient() {
+        EndpointRouter.shutdown();
+        EndpointRouter first = EndpointRouter.forUrls(PRIMARY + "," + REPLICA);
+        EndpointRouter second = EndpointRouter.forUrls(PRIMARY + "," + REPLICA);
+        EndpointRouter other = EndpointRouter.forUrls(REPLICA + ",https://typingdna-3.example.com");
+        Assert.assertSame("clients using the same urls must share the router", first, second);
+        Assert.assertTrue("gauges must be registered", Metrics.getInstance().getGauges().containsKey("endpoint " + PRIMARY + " latency"));
+
+        EndpointRouter.release(first);
+        Assert.assertEquals("router leased by a client must be kept", 2, EndpointRouter.size());
+
+        EndpointRouter.release(second);
+        Assert.assertEquals("router no client uses must be dropped", 1, EndpointRouter.size());
+        Assert.assertFalse("gauges of the dropped router must be unregistered", Metrics.getInstance().getGauges().containsKey("endpoint " + PRIMARY + " latency"));
+        Assert.assertTrue("gauges of an url another router uses must be kept", Metrics.getInstance().getGauges().containsKey("endpoint " + REPLICA + " latency"));
+        Assert.assertNotSame("a new router must be created once dropped", first, EndpointRouter.forUrls(PRIMARY + "," + REPLICA));
+
+        EndpointRouter.release(other);
+        EndpointRouter.shutdown();
+    }
+
+    private List<String> candidateUrls() {
+        return router.candidates().stream().map(EndpointRouter.Endpoint::getUrl).collect(Collectors.toList());
+    }
+
+    private EndpointRouter.Endpoint endpoint(String url) {
+        return router.getEndpoints().stream().filter(endpoint -> endpoint.getUrl().equals(url)).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.api.model.PatternType;
+import com.typingdna.util.Constants;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class PatternCountCacheTest {
+
+    private long now;
+    private PatternCountCache cache;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        cache = new PatternCountCache(Constants.PATTERN_COUNT_CACHE_SIZE, () -> now);
+    }
+
+    @Test
+    public void test_Get_ExpiresAfterTtl() {
+        cache.put(key("apiKey", "user"), 3, 60);
+
+        now += TimeUnit.SECONDS.toNanos(59);
+        Assert.assertEquals("entry must be served before the TTL", Integer.valueOf(3), cache.get(key("apiKey", "user")));
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        Assert.assertNull("entry must expire after the TTL", cache.get(key("apiKey", "user")));
+        Assert.assertEquals("expired entry must be removed", 0, cache.size());
+    }
+
+    @Test
+    public void test_Put_Ignored() {
+        cache.put(key("apiKey", "user"), 3, 0);
+        cache.put(key("apiKey", "other"), -1, 60);
+        cache.put(key("apiKey", "another"), Integer.MAX_VALUE, 60);
+
+        Assert.assertEquals("disabled TTL and invalid pattern counts must not be cached", 0, cache.size());
+    }
+
+    @Test
+    public void test_Put_WritesThrough() {
+        cache.put(key("apiKey", "user"), 2, 60);
+        cache.put(key("apiKey", "user"), 3, 60);
+
+        Assert.assertEquals("a later put must replace the pattern count", Integer.valueOf(3), cache.get(key("apiKey", "user")));
+        Assert.assertEquals("size must be 1", 1, cache.size());
+    }
+
+    @Test
+    public void test_Put_EvictsLeastRecentlyUsed() {
+        for (int i = 0; i < Constants.PATTERN_COUNT_CACHE_SIZE; i++) {
+            cache.put(key("apiKey", "user" + i), i, 60);
+        }
+        cache.get(key("apiKey", "user0"));
+
+        cache.put(key("apiKey", "newUser"), 3, 60);
+
+        Assert.assertEquals("size must stay bounded", Constants.PATTERN_COUNT_CACHE_SIZE, cache.size());
+        Assert.assertEquals("recently read entry must be kept", Integer.valueOf(0), cache.get(key("apiKey", "user0")));
+        Assert.assertNull("least recently used entry must be evicted", cache.get(key("apiKey", "user1")));
+        Assert.assertEquals("new entry must be cached", Integer.valueOf(3), cache.get(key("apiKey", "newUser")));
+    }
+
+    @Test
+    public void test_Invalidate() {
+        cache.put(new PatternCountCache.Key("apiKey", "user", PatternType.SAME_TEXT, null, DeviceType.DESKTOP), 3, 60);
+        cache.put(new PatternCountCache.Key("apiKey", "user", PatternType.ANY_TEXT, null, DeviceType.MOBILE), 2, 60);
+        cache.put(key("apiKey", "other"), 3, 60);
+        cache.put(key("otherApiKey", "user"), 3, 60);
+
+        cache.invalidate("apiKey", "user");
+
+        Assert.assertNull("every pattern count of the user must be dropped",
+                cache.get(new PatternCountCache.Key("apiKey", "user", PatternType.SAME_TEXT, null, DeviceType.DESKTOP)));
+        Assert.assertNull("every pattern count of the user must be dropped",
+                cache.get(new PatternCountCache.Key("apiKey", "user", PatternType.ANY_TEXT, null, DeviceType.MOBILE)));
+        Assert.assertEquals("other users must be kept", Integer.valueOf(3), cache.get(key("apiKey", "other")));
+        Assert.assertEquals("the same user of another API key must be kept", Integer.valueOf(3), cache.get(key("otherApiKey", "user")));
+    }
+
+    @Test
+    public void test_HitsAndMisses() {
+        cache.get(key("apiKey", "user"));
+        cache.put(key("apiKey", "user"), 3, 60);
+        cache.get(key("apiKey", "user"));
+        cache.get(key("apiKey", "user"));
+
+        now += TimeUnit.SECONDS.toNanos(60);
+        cache.get(key("apiKey", "user"));
+
+        Assert.assertEquals("hits must be 2", 2, cache.getHits());
+        Assert.assertEquals("misses must be 2", 2, cache.getMisses());
+    }
+
+    private static PatternCountCache.Key key(String apiKey, String username) {
+        return new PatternCountCache.Key(apiKey, username, PatternType.SAME_TEXT, null, DeviceType.DESKTOP);
+    }
+}
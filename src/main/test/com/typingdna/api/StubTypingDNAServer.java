@@ -0,0 +1,343 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the TypingDNA API, answering POST /auto, POST /verify, GET /user and DELETE /user with the
+ * fields read by {@link DeveloperAPI} and {@link ProEnterpriseAPI}. Users are enrolled by their first
+ * {@value #MIN_ENROLLMENTS} patterns; later patterns match with the configured match rate and are enrolled when they
+ * match. All patterns are counted as desktop patterns.
+ * <p>
+ * The latency, the rate of server errors and the rates of error message codes are configurable, so the nodes can be
+ * tested, benchmarked and soaked at the HTTP level without the real service. It can also be run on its own:
+ * {@code java StubTypingDNAServer <port> [minLatencyMs] [maxLatencyMs] [errorRate]}.
+ */
+public class StubTypingDNAServer implements AutoCloseable {
+
+    public static final int MIN_ENROLLMENTS = 3;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, AtomicInteger> patternCounts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, String> lastHeaders = new ConcurrentHashMap<>();
+
+    private volatile long minLatency = 0;
+    private volatile long maxLatency = 0;
+    private volatile double errorRate = 0;
+    private volatile double matchRate = 1;
+    private volatile Map<Integer, Double> messageCodeRates = new LinkedHashMap<>();
+    private volatile String authorization = null;
+
+    public StubTypingDNAServer() throws IOException {
+        this(0);
+    }
+
+    public StubTypingDNAServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "typingdna-stub-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    /**
+     * @return the URL to configure as the API url of the nodes
+     */
+    public String getUrl() {
+        return String.format("http://%s:%d", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    /**
+     * Delays every response by a uniformly distributed latency.
+     */
+    public StubTypingDNAServer setLatency(long minMillis, long maxMillis) {
+        this.minLatency = minMillis;
+        this.maxLatency = Math.max(minMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * Answers the given fraction of the requests with an HTTP 500.
+     */
+    public StubTypingDNAServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answers the given fraction of the requests with an HTTP 400 holding the message code.
+     */
+    public synchronized StubTypingDNAServer setMessageCodeRate(int messageCode, double rate) {
+        Map<Integer, Double> rates = new LinkedHashMap<>(messageCodeRates);
+        rates.put(messageCode, rate);
+        this.messageCodeRates = rates;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of the verified patterns which match.
+     */
+    public StubTypingDNAServer setMatchRate(double matchRate) {
+        this.matchRate = matchRate;
+        return this;
+    }
+
+    /**
+     * Requires the given credentials; other requests are answered with message code 32.
+     */
+    public StubTypingDNAServer setCredentials(String apiKey, String apiSecret) {
+        String credentials = apiKey + ":" + apiSecret;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    public StubTypingDNAServer setPatternCount(String username, int patternCount) {
+        patternCounts.computeIfAbsent(username, key -> new AtomicInteger()).set(patternCount);
+        return this;
+    }
+
+    public int getPatternCount(String username) {
+        AtomicInteger patternCount = patternCounts.get(username);
+        return patternCount != null ? patternCount.get() : 0;
+    }
+
+    /**
+     * @return the number of requests received for the call, e.g. "POST /auto"
+     */
+    public long getRequests(String call) {
+        LongAdder count = requests.get(call);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * @return the value of the header in the last request received, or null
+     */
+    public String getLastHeader(String name) {
+        return lastHeaders.get(name.toLowerCase());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String call = path.length > 1 ? String.format("%s /%s", method, path[1]) : method + " /";
+            requests.computeIfAbsent(call, key -> new LongAdder()).increment();
+            exchange.getRequestHeaders().forEach((name, values) -> lastHeaders.put(name.toLowerCase(), values.get(0)));
+            Map<String, String> form = parseForm(exchange.getRequestBody());
+
+            delay();
+
+            if (authorization != null && !authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, error(32, 401, "Invalid credentials"));
+                return;
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < errorRate) {
+                respond(exchange, 500, error(0, 500, "Internal server error"));
+                return;
+            }
+
+            double draw = random.nextDouble();
+            for (Map.Entry<Integer, Double> rate : messageCodeRates.entrySet()) {
+                draw -= rate.getValue();
+                if (draw < 0) {
+                    respond(exchange, 400, error(rate.getKey(), 400, "Stubbed error"));
+                    return;
+                }
+            }
+
+            if (path.length != 3) {
+                respond(exchange, 404, error(0, 404, "Not found"));
+                return;
+            }
+
+            String username = path[2];
+            switch (call) {
+                case "POST /auto":
+                case "POST /verify":
+                    if (form.getOrDefault("tp", "").isEmpty()) {
+                        respond(exchange, 400, error(5, 400, "Missing typing pattern"));
+                    } else {
+                        respond(exchange, 200, verify(username));
+                    }
+                    break;
+                case "GET /user":
+                    respond(exchange, 200, checkUser(username));
+                    break;
+                case "DELETE /user":
+                    respond(exchange, 200, deleteUser(username));
+                    break;
+                default:
+                    respond(exchange, 404, error(0, 404, "Not found"));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Map<String, Object> verify(String username) {
+        AtomicInteger patternCount = patternCounts.computeIfAbsent(username, key -> new AtomicInteger());
+        Map<String, Object> body = success();
+
+        int count = patternCount.get();
+        if (count < MIN_ENROLLMENTS) {
+            count = patternCount.incrementAndGet();
+            body.put("action", "enroll");
+            body.put("result", 0);
+            body.put("has_minimum_enrollments", count >= MIN_ENROLLMENTS);
+        } else if (ThreadLocalRandom.current().nextDouble() < matchRate) {
+            patternCount.incrementAndGet();
+            body.put("action", "verify;enroll");
+            body.put("result", 1);
+        } else {
+            body.put("action", "verify");
+            body.put("result", 0);
+        }
+
+        return body;
+    }
+
+    private Map<String, Object> checkUser(String username) {
+        Map<String, Object> body = success();
+        body.put("success", 1);
+        body.put("count", getPatternCount(username));
+        body.put("mobilecount", 0);
+        return body;
+    }
+
+    private Map<String, Object> deleteUser(String username) {
+        AtomicInteger patternCount = patternCounts.remove(username);
+        Map<String, Object> body = success();
+        body.put("success", 1);
+        body.put("deleted", patternCount != null ? patternCount.get() : 0);
+        return body;
+    }
+
+    private void delay() {
+        if (maxLatency <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, Object> success() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("message", "Done");
+        body.put("message_code", 1);
+        body.put("status", 200);
+        return body;
+    }
+
+    private static Map<String, Object> error(int messageCode, int status, String message) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", "StubError");
+        body.put("message", message);
+        body.put("message_code", messageCode);
+        body.put("status", status);
+        return body;
+    }
+
+    private static void respond(HttpExchange exchange, int status, Map<String, Object> body) throws IOException {
+        byte[] json = toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static String toJson(Map<String, Object> body) {
+        StringBuilder json = new StringBuilder("{");
+        body.forEach((key, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(key).append("\":");
+            if (value instanceof String) {
+                json.append('"').append(((String) value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            } else {
+                json.append(value);
+            }
+        });
+        return json.append('}').toString();
+    }
+
+    private static Map<String, String> parseForm(InputStream in) throws IOException {
+        String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+
+    public static void main(String[] args) throws Exception {
+        StubTypingDNAServer server = new StubTypingDNAServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        if (args.length > 2) {
+            server.setLatency(Long.parseLong(args[1]), Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            server.setErrorRate(Double.parseDouble(args[3]));
+        }
+
+        System.out.println("TypingDNA stub server listening on " + server.getUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.api;
+
+import com.typingdna.api.model.CheckUserResponse;
+import com.typingdna.api.model.DeleteUserResponse;
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.api.model.PatternType;
+import com.typingdna.api.model.VerifyResponse;
+import com.typingdna.util.Metrics;
+import com.typingdna.util.Span;
+import com.typingdna.util.Tracer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class TypingDNAAPIIntegrationTest {
+
+    private static final String username = "6cbbd2cb1a2d4e8b14a6e0a4d2fb8c9f";
+    private static final String typingPattern = "0,3.2,0,0,11,1004326382,1,77,-1,1,61,-1,1,150,-1,2,68,23,2,27,6,1,0,0,1,2,1,4224896695,1,1,0,0,0,1,1080,1920,1,1015,106,0,1495460187|2983,119|210,74|180,92|75,47|89,150|165,76|90,107|123,72|193,94|93,101|116,105";
+
+    private StubTypingDNAServer server;
+    private TypingDNAAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubTypingDNAServer().setCredentials("apiKey", "apiSecret");
+    }
+
+    @After
+    public void tearDown() {
+        if (api != null) {
+            api.close();
+        }
+        server.close();
+        Tracer.getInstance().setExporter(null);
+    }
+
+    @Test
+    public void test_Developer_EnrollThenMatch() throws Exception {
+        api = new DeveloperAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+
+        for (int i = 1; i < StubTypingDNAServer.MIN_ENROLLMENTS; i++) {
+            VerifyResponse response = api.verify(username, typingPattern, "request");
+            Assert.assertFalse("verify must not fail", response.isError());
+            Assert.assertTrue("user must need more patterns", response.isNeedsEnroll());
+            Assert.assertTrue("pattern must be enrolled", response.isPatternEnrolled());
+        }
+
+        VerifyResponse response = api.verify(username, typingPattern, "request");
+        Assert.assertFalse("user must have enough patterns", response.isNeedsEnroll());
+        Assert.assertFalse("enrolled pattern must not match", response.isMatch());
+
+        response = api.verify(username, typingPattern, "request");
+        Assert.assertTrue("pattern must match", response.isMatch());
+        Assert.assertTrue("matching pattern must be enrolled", response.isPatternEnrolled());
+
+        CheckUserResponse checkUserResponse = api.checkUser(username, PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "request");
+        Assert.assertFalse("check user must not fail", checkUserResponse.isError());
+        Assert.assertEquals("all patterns must be counted", StubTypingDNAServer.MIN_ENROLLMENTS + 1, checkUserResponse.getPatternCount());
+        Assert.assertEquals("auto must be called", StubTypingDNAServer.MIN_ENROLLMENTS + 1, server.getRequests("POST /auto"));
+        Assert.assertEquals("user must be checked once", 1, server.getRequests("GET /user"));
+    }
+
+    @Test
+    public void test_ProEnterprise_Verify_NoMatch() throws Exception {
+        server.setPatternCount(username, StubTypingDNAServer.MIN_ENROLLMENTS).setMatchRate(0);
+        api = new ProEnterpriseAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+
+        VerifyResponse response = api.verify(username, typingPattern, "request");
+
+        Assert.assertFalse("verify must not fail", response.isError());
+        Assert.assertFalse("pattern must not match", response.isMatch());
+        Assert.assertFalse("pattern must not be enrolled", response.isPatternEnrolled());
+        Assert.assertEquals("verify must be called", 1, server.getRequests("POST /verify"));
+    }
+
+    @Test
+    public void test_DeleteUser() throws Exception {
+        server.setPatternCount(username, 5);
+        api = new ProEnterpriseAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+
+        DeleteUserResponse response = api.deleteUser(username, "request");
+
+        Assert.assertFalse("delete user must not fail", response.isError());
+        Assert.assertEquals("patterns must be deleted", 0, server.getPatternCount(username));
+    }
+
+    @Test
+    public void test_InvalidCredentials() throws Exception {
+        api = new DeveloperAPI(server.getUrl(), "apiKey", "wrongSecret".toCharArray(), 8000);
+
+        VerifyResponse response = api.verify(username, typingPattern, "request");
+
+        Assert.assertTrue("verify must fail", response.isError());
+        Assert.assertFalse("error must be permanent", response.isTemporary());
+        Assert.assertEquals("message code must be 32", 32, response.getCode());
+    }
+
+    @Test
+    public void test_ServerError() throws Exception {
+        server.setErrorRate(1);
+        api = new DeveloperAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+        long serverErrors = Metrics.getInstance().getCalls().getOrDefault(TypingDNAAPI.AUTO + " 5xx", 0L);
+
+        VerifyResponse response = api.verify(username, typingPattern, "request");
+
+        Assert.assertTrue("verify must fail", response.isError());
+        Assert.assertTrue("error must be temporary", response.isTemporary());
+        Assert.assertEquals("call must be counted as a server error", serverErrors + 1,
+                (long) Metrics.getInstance().getCalls().getOrDefault(TypingDNAAPI.AUTO + " 5xx", 0L));
+    }
+
+    @Test
+    public void test_MessageCode() throws Exception {
+        server.setMessageCodeRate(4, 1);
+        api = new ProEnterpriseAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+
+        VerifyResponse response = api.verify(username, typingPattern, "request");
+
+        Assert.assertTrue("verify must fail", response.isError());
+        Assert.assertFalse("error must be permanent", response.isTemporary());
+        Assert.assertEquals("message code must be 4", 4, response.getCode());
+    }
+
+    @Test
+    public void test_TraceContext() throws Exception {
+        Tracer.getInstance().setExporter(ended -> {});
+        api = new DeveloperAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+
+        try (Span span = Tracer.getInstance().startSpan("test")) {
+            api.verify(username, typingPattern, "request");
+
+            String traceparent = server.getLastHeader(Tracer.TRACEPARENT_HEADER);
+            Assert.assertNotNull("traceparent must be sent", traceparent);
+            Assert.assertTrue("traceparent must belong to the trace", traceparent.startsWith("00-" + span.getTraceId() + "-"));
+        }
+    }
+
+    @Test
+    public void test_TraceStatusCode() throws Exception {
+        List<Span> spans = new CopyOnWriteArrayList<>();
+        Tracer.getInstance().setExporter(spans::add);
+        server.setErrorRate(1);
+        api = new DeveloperAPI(server.getUrl(), "apiKey", "apiSecret".toCharArray(), 8000);
+
+        try (Span ignored = Tracer.getInstance().startSpan("test")) {
+            api.verify(username, typingPattern, "request");
+        }
+
+        Span request = spans.stream().filter(span -> span.getName().equals("HTTP POST")).findFirst().orElse(null);
+        Assert.assertNotNull("request span must be exported", request);
+        Assert.assertEquals("status code must be the one of the response", "500", request.getAttributes().get("http.status_code"));
+        Assert.assertTrue("server error must mark the span", request.isError());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import com.typingdna.util.ConfigAdapter;
+import com.typingdna.util.Constants;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TypingDNAAPIRegistryTest {
+
+    @Before
+    public void setUp() {
+        TypingDNAAPIRegistry.shutdown();
+    }
+
+    @Test
+    public void test_Acquire_SameConfiguration() throws Exception {
+        TypingDNAAPI first = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+        TypingDNAAPI second = TypingDNAAPIRegistry.acquire("node2", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+
+        Assert.assertSame("nodes with the same configuration must share the client", first, second);
+        Assert.assertTrue("client must match the configuration", first instanceof DeveloperAPI);
+        Assert.assertEquals("a single client must be created", 1, TypingDNAAPIRegistry.size());
+
+        TypingDNAAPIRegistry.release(first);
+        TypingDNAAPIRegistry.release(second);
+        Assert.assertEquals("unused clients must be kept", 1, TypingDNAAPIRegistry.size());
+        Assert.assertSame("client must be reused", first, TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "apiSecret")));
+    }
+
+    @Test
+    public void test_Acquire_DifferentConfiguration() throws Exception {
+        TypingDNAAPI basic = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+        TypingDNAAPI advanced = TypingDNAAPIRegistry.acquire("node2", key(ConfigAdapter.Configuration.Advanced, "apiSecret"));
+        TypingDNAAPI otherSecret = TypingDNAAPIRegistry.acquire("node3", key(ConfigAdapter.Configuration.Basic, "otherSecret"));
+
+        Assert.assertTrue("client must match the configuration", advanced instanceof ProEnterpriseAPI);
+        Assert.assertNotSame("configurations must not share the client", basic, advanced);
+        Assert.assertNotSame("secrets must not share the client", basic, otherSecret);
+        Assert.assertEquals("a client must be created for every configuration", 3, TypingDNAAPIRegistry.size());
+    }
+
+    @Test
+    public void test_Acquire_ConfigurationChanged() throws Exception {
+        TypingDNAAPI previous = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+        TypingDNAAPIRegistry.release(previous);
+
+        TypingDNAAPI current = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "newSecret"));
+
+        Assert.assertNotSame("a new client must be created", previous, current);
+        Assert.assertEquals("previous client must be closed", 1, TypingDNAAPIRegistry.size());
+    }
+
+    @Test
+    public void test_Acquire_ConfigurationChangedWhileInUse() throws Exception {
+        TypingDNAAPI previous = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+        TypingDNAAPI current = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "newSecret"));
+
+        Assert.assertEquals("client in use must not be closed", 2, TypingDNAAPIRegistry.size());
+
+        TypingDNAAPIRegistry.release(previous);
+        Assert.assertEquals("previous client must be closed once released", 1, TypingDNAAPIRegistry.size());
+
+        TypingDNAAPIRegistry.release(current);
+        Assert.assertEquals("current client must be kept", 1, TypingDNAAPIRegistry.size());
+    }
+
+    @Test
+    public void test_Acquire_ConfigurationSharedWithOtherNode() throws Exception {
+        TypingDNAAPI shared = TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+        TypingDNAAPIRegistry.acquire("node2", key(ConfigAdapter.Configuration.Basic, "apiSecret"));
+        TypingDNAAPIRegistry.release(shared);
+        TypingDNAAPIRegistry.release(shared);
+
+        TypingDNAAPIRegistry.acquire("node1", key(ConfigAdapter.Configuration.Basic, "newSecret"));
+
+        Assert.assertEquals("client used by another node must be kept", 2, TypingDNAAPIRegistry.size());
+        Assert.assertSame("other node must keep its client", shared, TypingDNAAPIRegistry.acquire("node2", key(ConfigAdapter.Configuration.Basic, "apiSecret")));
+    }
+
+    @Test
+    public void test_Key_SecretHashedOncePerConfiguration() {
+        TestConfig config = new TestConfig("apiSecret");
+        TypingDNAAPIRegistry.Key first = TypingDNAAPIRegistry.Key.forDecisionNode("node1", config);
+
+        config.apiSecret = "newSecret";
+        Assert.assertEquals("the secret of a configuration instance must not be hashed again",
+                first, TypingDNAAPIRegistry.Key.forDecisionNode("node1", config));
+        Assert.assertNotEquals("another node must hash its own secret",
+                first, TypingDNAAPIRegistry.Key.forDecisionNode("node2", config));
+        Assert.assertNotEquals("a new configuration instance must be hashed again",
+                first, TypingDNAAPIRegistry.Key.forDecisionNode("node1", new TestConfig("newSecret")));
+        Assert.assertEquals("the key must match a key built from the secret",
+                key(ConfigAdapter.Configuration.Basic, "newSecret"), TypingDNAAPIRegistry.Key.forDecisionNode("node1", new TestConfig("newSecret")));
+    }
+
+    @Test
+    public void test_Key_SecretHashDroppedWithClient() throws Exception {
+        TestConfig config = new TestConfig("apiSecret");
+        TypingDNAAPI api = TypingDNAAPIRegistry.acquire("node1", TypingDNAAPIRegistry.Key.forDecisionNode("node1", config));
+        TypingDNAAPIRegistry.release(api);
+
+        TypingDNAAPIRegistry.evict(System.currentTimeMillis() + Constants.CONNECTION_POOL_IDLE_TIMEOUT + 1);
+        Assert.assertEquals("idle client must be closed", 0, TypingDNAAPIRegistry.size());
+
+        config.apiSecret = "newSecret";
+        Assert.assertEquals("the secret hash must be dropped with the client",
+                key(ConfigAdapter.Configuration.Basic, "newSecret"), TypingDNAAPIRegistry.Key.forDecisionNode("node1", config));
+    }
+
+    private static TypingDNAAPIRegistry.Key key(ConfigAdapter.Configuration configuration, String apiSecret) {
+        return new TypingDNAAPIRegistry.Key(configuration, "https://api.typingdna.com/", "apiKey", apiSecret.toCharArray(),
+                8000, 64, 30, 0, 0);
+    }
+
+    private static final class TestConfig implements ConfigAdapter {
+        private String apiSecret;
+
+        private TestConfig(String apiSecret) {
+            this.apiSecret = apiSecret;
+        }
+
+        @Override
+        public String apiUrl() {
+            return "https://api.typingdna.com/";
+        }
+
+        @Override
+        public String apiKey() {
+            return "apiKey";
+        }
+
+        @Override
+        public char[] apiSecret() {
+            return apiSecret.toCharArray();
+        }
+
+        @Override
+        public Configuration authAPIConfiguration() {
+            return Configuration.Basic;
+        }
+
+        @Override
+        public int requestTimeout() {
+            return 8000;
+        }
+
+        @Override
+        public int connectionPoolSize() {
+            return 64;
+        }
+
+        @Override
+        public int circuitBreakerOpenDuration() {
+            return 30;
+        }
+
+        @Override
+        public int adaptiveTimeoutMultiplier() {
+            return 0;
+        }
+
+        @Override
+        public int hedgePercentile() {
+            return 0;
+        }
+    }
+}
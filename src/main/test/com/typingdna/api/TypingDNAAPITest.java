@@ -0,0 +1,46 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Map;
+
+public class TypingDNAAPITest {
+
+    @Test
+    public void test_RequestHeaders() throws Exception {
+        char[] apiSecret = "apiSecret".toCharArray();
+        TypingDNAAPI api = new DeveloperAPI("https://api.typingdna.com", "apiKey", apiSecret, 8000);
+        try {
+            Map<String, String> headers = api.getRequestHeaders();
+
+            String expected = "Basic " + Base64.getEncoder().encodeToString("apiKey:apiSecret".getBytes());
+            Assert.assertEquals("Authorization header must hold the credentials", expected, headers.get("Authorization"));
+            Assert.assertEquals("Accept header must be JSON", "application/json", headers.get("Accept"));
+            Assert.assertEquals("tdna-advanced header must be set", "1", headers.get("tdna-advanced"));
+            Assert.assertSame("headers must be computed once", headers, api.getRequestHeaders());
+            Assert.assertArrayEquals("secret must not be modified", "apiSecret".toCharArray(), apiSecret);
+            Assert.assertThrows(UnsupportedOperationException.class, () -> headers.put("Accept", "text/html"));
+        } finally {
+            api.close();
+        }
+    }
+}
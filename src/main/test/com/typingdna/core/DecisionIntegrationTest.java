@@ -18,18 +18,22 @@
 package com.typingdna.core;
 
 import com.google.common.collect.ImmutableList;
+import com.typingdna.api.model.APIResponse;
 import com.typingdna.api.model.CheckUserResponse;
 import com.typingdna.api.model.DeviceType;
 import com.typingdna.api.model.PatternType;
 import com.typingdna.api.model.VerifyResponse;
 import com.typingdna.nodes.outcomeproviders.TypingDNADecisionOutcomeProvider.TypingDNADecisionOutcome;
 import com.typingdna.core.statechanges.ExitNodeStateChange;
+import com.typingdna.core.businesslogic.ReplayGuard;
 import com.typingdna.core.statechanges.StateChange;
+import com.typingdna.api.PatternCountCache;
 import com.typingdna.api.TypingDNAAPI;
 import com.typingdna.util.ConfigAdapter;
 import com.typingdna.util.Constants;
 import com.typingdna.util.HashAlgorithm;
 import com.typingdna.util.HelperFunctions;
+import com.typingdna.util.Messages;
 import com.typingdna.util.State;
 import org.forgerock.json.JsonValue;
 import org.forgerock.openam.auth.node.api.NodeProcessException;
@@ -42,20 +46,22 @@ import org.mockito.Mock;
 
 import javax.security.auth.callback.Callback;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
+import static org.forgerock.util.promise.Promises.newResultPromise;
 import static org.mockito.Mockito.*;
 
 public class DecisionIntegrationTest {
 
     @Mock
-    private ScriptConfiguration scriptConfiguration;
+    protected ScriptConfiguration scriptConfiguration;
     @Mock
-    private ConfigAdapter config;
+    protected ConfigAdapter config;
     @Mock
-    private TypingDNAAPI api;
+    protected TypingDNAAPI api;
 
-    private static final String typingPattern = "0,3.2,0,0,11,1004326382,1,77,-1,1,61,-1,1,150,-1,2,68,23,2,27,6,1,0,0,1,2,1,4224896695,1,1,0,0,0,1,1080,1920,1,1015,106,0,1495460187|2983,119|210,74|180,92|75,47|89,150|165,76|90,107|123,72|193,94|93,101|116,105";
+    protected static final String typingPattern = "0,3.2,0,0,11,1004326382,1,77,-1,1,61,-1,1,150,-1,2,68,23,2,27,6,1,0,0,1,2,1,4224896695,1,1,0,0,0,1,1080,1920,1,1015,106,0,1495460187|2983,119|210,74|180,92|75,47|89,150|165,76|90,107|123,72|193,94|93,101|116,105";
 
     @Before
     public void setUp() {
@@ -69,6 +75,11 @@ public class DecisionIntegrationTest {
         when(config.requestIdentifier()).thenReturn("");
         when(config.hashAlgorithm()).thenReturn(HashAlgorithm.MD5);
         when(scriptConfiguration.getScript()).thenReturn("script");
+
+        when(api.checkUserAsync(any(), any(), any(), any(), any())).thenAnswer(invocation -> newResultPromise(api.checkUser(
+                invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3), invocation.getArgument(4))));
+        when(api.verifyAsync(any(), any(), any())).thenAnswer(invocation -> newResultPromise(api.verify(
+                invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2))));
     }
 
     @Test
@@ -268,6 +279,136 @@ public class DecisionIntegrationTest {
                 null);
     }
 
+    @Test
+    public void test_HandleForm_Verify_Match_CopiesStateOnce() throws NodeProcessException {
+        /** SET UP **/
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(3);
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(checkUserResponse);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setMatch(true);
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), typingPattern, "")).thenReturn(verifyResponse);
+
+        AtomicInteger sharedStateCopies = new AtomicInteger();
+        AtomicInteger transientStateCopies = new AtomicInteger();
+        JsonValue sharedState = countCopies(new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .build(), sharedStateCopies);
+        JsonValue transientState = countCopies(new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build(), transientStateCopies);
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        Decision useCase = new Decision(config, state, api);
+
+        /** TEST **/
+        StateChange stateChange = useCase.handleForm();
+
+        Assert.assertEquals("stateChange must be an instance of ExitNodeStateChange", ExitNodeStateChange.class, stateChange.getClass());
+        Assert.assertEquals("sharedState must be copied once in total", 1, sharedStateCopies.get());
+        Assert.assertEquals("transientState must be copied once in total", 1, transientStateCopies.get());
+        Assert.assertEquals("original sharedState must not change", 2, sharedState.size());
+        Assert.assertEquals("original transientState must not change", 1, transientState.size());
+    }
+
+    @Test
+    public void test_HandleForm_Verify_Match_AuditEntryDetail() throws NodeProcessException {
+        /** SET UP **/
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(3);
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(checkUserResponse);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setMatch(true);
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), typingPattern, "")).thenReturn(verifyResponse);
+
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .put(Constants.VERIFY_RETRIES, 1)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        Decision useCase = new Decision(config, state, api);
+
+        /** TEST **/
+        StateChange stateChange = useCase.handleForm();
+
+        Assert.assertEquals("stateChange must be an instance of ExitNodeStateChange", ExitNodeStateChange.class, stateChange.getClass());
+
+        JsonValue auditEntryDetail = ((ExitNodeStateChange) stateChange).getAuditEntryDetail();
+        Assert.assertEquals("action must be 'VERIFY'", "VERIFY", auditEntryDetail.get("action").asString());
+        Assert.assertEquals("outcome must be 'match'", TypingDNADecisionOutcome.MATCH.name(), auditEntryDetail.get("outcome").asString());
+        Assert.assertEquals("user check and verify must be counted", 2, (int) auditEntryDetail.get("apiCalls").asInteger());
+        Assert.assertEquals("no cache hits", 0, (int) auditEntryDetail.get("cacheHits").asInteger());
+        Assert.assertEquals("retries must be recorded", 1, (int) auditEntryDetail.get("retries").asInteger());
+        Assert.assertTrue("api latency must be recorded", auditEntryDetail.get("apiLatency").asLong() >= 0);
+    }
+
+    @Test
+    public void test_HandleForm_Verify_Match_PatternCountCached() throws NodeProcessException {
+        /** SET UP **/
+        when(config.apiKey()).thenReturn("apiKey");
+        when(config.patternCountCacheTtl()).thenReturn(60);
+
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(3);
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(checkUserResponse);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setMatch(true);
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), typingPattern, "")).thenReturn(verifyResponse);
+
+        PatternCountCache.getInstance().clear();
+        try {
+            /** TEST **/
+            ExitNodeStateChange first = (ExitNodeStateChange) login();
+            ExitNodeStateChange second = (ExitNodeStateChange) login();
+
+            verify(api, times(1)).checkUser(any(), any(), any(), any(), any());
+            Assert.assertEquals("outcome must be 'match'", TypingDNADecisionOutcome.MATCH.name(), second.outcome);
+            Assert.assertEquals("patternsEnrolled must be 3", 3, (int) second.sharedState.get(Constants.PATTERNS_ENROLLED).asInteger());
+            Assert.assertEquals("first login must not hit the cache", 0, (int) first.getAuditEntryDetail().get("cacheHits").asInteger());
+            Assert.assertEquals("second login must hit the cache", 1, (int) second.getAuditEntryDetail().get("cacheHits").asInteger());
+        } finally {
+            PatternCountCache.getInstance().clear();
+        }
+    }
+
+    @Test
+    public void test_HandleForm_Verify_Enroll_PatternCountWrittenThrough() throws NodeProcessException {
+        /** SET UP **/
+        when(config.apiKey()).thenReturn("apiKey");
+        when(config.patternCountCacheTtl()).thenReturn(60);
+
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(1);
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(checkUserResponse);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setNeedsEnroll(true);
+        verifyResponse.setPatternEnrolled(true);
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), typingPattern, "")).thenReturn(verifyResponse);
+
+        PatternCountCache.getInstance().clear();
+        try {
+            /** TEST **/
+            ExitNodeStateChange first = (ExitNodeStateChange) login();
+            ExitNodeStateChange second = (ExitNodeStateChange) login();
+
+            verify(api, times(1)).checkUser(any(), any(), any(), any(), any());
+            Assert.assertEquals("first login must enroll a second pattern", 2, (int) first.sharedState.get(Constants.PATTERNS_ENROLLED).asInteger());
+            Assert.assertEquals("second login must start from the enrolled count", 3, (int) second.sharedState.get(Constants.PATTERNS_ENROLLED).asInteger());
+        } finally {
+            PatternCountCache.getInstance().clear();
+        }
+    }
+
     @Test
     public void test_HandleForm_Verify_Match_AutoEnrolled() throws NodeProcessException {
         /** SET UP **/
@@ -694,6 +835,144 @@ public class DecisionIntegrationTest {
                 "An authentication error occurred, please try again. (code: 36)");
     }
 
+    @Test
+    public void test_HandleForm_Verify_SyntheticTypingPattern() throws NodeProcessException {
+        /** SET UP **/
+        String syntheticTypingPattern = typingPattern.substring(0, typingPattern.indexOf('|')) + "|100,100|100,100|100,100|100,100";
+
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, syntheticTypingPattern)
+                .build();
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        Decision useCase = new Decision(config, state, api);
+
+        /** TEST **/
+        StateChange stateChange = useCase.handleForm();
+
+        Assert.assertNotNull("stateChange can't be null", stateChange);
+        Assert.assertEquals("stateChange must be an instance of ExitNodeStateChange", ExitNodeStateChange.class, stateChange.getClass());
+
+        ExitNodeStateChange exitStateChange = (ExitNodeStateChange) stateChange;
+        Assert.assertEquals("outcome must be 'retry'", TypingDNADecisionOutcome.RETRY.name(), exitStateChange.outcome);
+
+        verify(api, never()).checkUserAsync(any(), any(), any(), any(), any());
+        verify(api, never()).verifyAsync(any(), any(), any());
+
+        verifyState(
+                exitStateChange.sharedState,
+                4,
+                exitStateChange.transientState,
+                1,
+                ActionType.VERIFY.getAction(),
+                null,
+                null,
+                syntheticTypingPattern,
+                null,
+                null,
+                DeviceType.DESKTOP,
+                Messages.TOO_MANY_TYPOS);
+    }
+
+    @Test
+    public void test_HandleForm_Verify_ReplayedTypingPattern() throws NodeProcessException {
+        /** SET UP **/
+        when(config.apiKey()).thenReturn(getClass().getName());
+        ReplayGuard.shutdown();
+        ReplayGuard replayGuard = ReplayGuard.getInstance(getClass().getName(), 1000, 1);
+
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(3);
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(checkUserResponse);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setMatch(true);
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), typingPattern, "")).thenReturn(verifyResponse);
+
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        StateChange firstStateChange = new Decision(config, new State(sharedState, transientState, ImmutableList.of()), api).setReplayGuard(replayGuard).handleForm();
+        Assert.assertEquals("first outcome must be 'match'", TypingDNADecisionOutcome.MATCH.name(), firstStateChange.getOutcome());
+
+        /** TEST **/
+        StateChange stateChange = new Decision(config, new State(sharedState, transientState, ImmutableList.of()), api).setReplayGuard(replayGuard).handleForm();
+
+        Assert.assertNotNull("stateChange can't be null", stateChange);
+        Assert.assertEquals("stateChange must be an instance of ExitNodeStateChange", ExitNodeStateChange.class, stateChange.getClass());
+
+        ExitNodeStateChange exitStateChange = (ExitNodeStateChange) stateChange;
+        Assert.assertEquals("outcome must be 'retry'", TypingDNADecisionOutcome.RETRY.name(), exitStateChange.outcome);
+
+        verify(api, times(1)).verifyAsync(any(), any(), any());
+
+        verifyState(
+                exitStateChange.sharedState,
+                5,
+                exitStateChange.transientState,
+                1,
+                ActionType.RETRY.getAction(),
+                null,
+                1,
+                typingPattern,
+                null,
+                null,
+                DeviceType.DESKTOP,
+                "Authentication failed. Try again...");
+    }
+
+    @Test
+    public void test_HandleForm_Verify_CircuitOpen() throws NodeProcessException {
+        /** SET UP **/
+        when(config.circuitOpenOutcome()).thenReturn(ConfigAdapter.CircuitOpenOutcome.UNAVAILABLE);
+
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(new CheckUserResponse(APIResponse.CIRCUIT_OPEN, true));
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), typingPattern, "")).thenReturn(new VerifyResponse(APIResponse.CIRCUIT_OPEN, true));
+
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        Decision useCase = new Decision(config, state, api);
+
+        /** TEST **/
+        StateChange stateChange = useCase.handleForm();
+
+        Assert.assertNotNull("stateChange can't be null", stateChange);
+        Assert.assertEquals("stateChange must be an instance of ExitNodeStateChange", ExitNodeStateChange.class, stateChange.getClass());
+
+        ExitNodeStateChange exitStateChange = (ExitNodeStateChange) stateChange;
+        Assert.assertEquals("outcome must be 'unavailable'", TypingDNADecisionOutcome.UNAVAILABLE.name(), exitStateChange.outcome);
+
+        verifyState(
+                exitStateChange.sharedState,
+                5,
+                exitStateChange.transientState,
+                1,
+                ActionType.VERIFY.getAction(),
+                Integer.MAX_VALUE,
+                null,
+                typingPattern,
+                null,
+                null,
+                DeviceType.DESKTOP,
+                Messages.SERVICE_UNAVAILABLE);
+    }
+
     @Test
     public void test_HandleForm_Enroll_Enroll_SaveFails() throws NodeProcessException {
         /** SET UP **/
@@ -971,6 +1250,43 @@ public class DecisionIntegrationTest {
                 "Authentication failed. Try again...");
     }
 
+    @Test
+    public void test_HandleForm_Retry_NoMatch_Retry_KeepsMostRecentPatterns() throws NodeProcessException {
+        /** SET UP **/
+        when(config.retries()).thenReturn(5);
+        when(config.previousPatternsLimit()).thenReturn(2);
+
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(3);
+        when(api.checkUser(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), PatternType.SAME_TEXT, null, DeviceType.DESKTOP, "")).thenReturn(checkUserResponse);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setMatch(false);
+        when(api.verify(HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5), String.format("%s;second;first", typingPattern), "")).thenReturn(verifyResponse);
+
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.PREVIOUS_ACTION, ActionType.RETRY.getAction())
+                .put(Constants.VERIFY_RETRIES, 2)
+                .put(Constants.DEVICE_TYPE, 0)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.PREVIOUS_TYPING_PATTERNS, "second;first")
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        Decision useCase = new Decision(config, state, api);
+
+        /** TEST **/
+        StateChange stateChange = useCase.handleForm();
+
+        ExitNodeStateChange exitStateChange = (ExitNodeStateChange) stateChange;
+        Assert.assertEquals("outcome must be 'RETRY'", TypingDNADecisionOutcome.RETRY.name(), exitStateChange.outcome);
+        Assert.assertEquals("only the 2 most recent patterns must be kept", String.format("%s;second", typingPattern),
+                exitStateChange.transientState.get(Constants.PREVIOUS_TYPING_PATTERNS).asString());
+    }
+
     @Test
     public void test_HandleForm_Retry_NoMatch_NoRetriesLeft() throws NodeProcessException {
         /** SET UP **/
@@ -1070,6 +1386,27 @@ public class DecisionIntegrationTest {
                 null);
     }
 
+    private StateChange login() throws NodeProcessException {
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        return new Decision(config, new State(sharedState, transientState, ImmutableList.of()), api).handleForm();
+    }
+
+    private static JsonValue countCopies(JsonValue value, AtomicInteger copies) {
+        JsonValue spy = spy(value);
+        doAnswer(invocation -> {
+            copies.incrementAndGet();
+            return countCopies((JsonValue) invocation.callRealMethod(), copies);
+        }).when(spy).copy();
+        return spy;
+    }
+
     private void verifyState(JsonValue sharedState,
                              Integer sharedStateLength,
                              JsonValue transientState,
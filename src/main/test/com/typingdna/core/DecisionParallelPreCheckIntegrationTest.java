@@ -0,0 +1,100 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core;
+
+import com.google.common.collect.ImmutableList;
+import com.typingdna.api.model.CheckUserResponse;
+import com.typingdna.api.model.DeviceType;
+import com.typingdna.api.model.VerifyResponse;
+import com.typingdna.core.businesslogic.AuthenticationData;
+import com.typingdna.core.businesslogic.TDNAAuthentication;
+import com.typingdna.core.statechanges.ExitNodeStateChange;
+import com.typingdna.core.statechanges.StateChange;
+import com.typingdna.nodes.outcomeproviders.TypingDNADecisionOutcomeProvider.TypingDNADecisionOutcome;
+import com.typingdna.util.Constants;
+import com.typingdna.util.HashAlgorithm;
+import com.typingdna.util.HelperFunctions;
+import com.typingdna.util.State;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.utils.JsonObject;
+import org.forgerock.util.promise.NeverThrowsException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs every Decision scenario again with the parallel pre-check enabled, the outcomes must be identical to the
+ * sequential mode.
+ */
+public class DecisionParallelPreCheckIntegrationTest extends DecisionIntegrationTest {
+
+    @Before
+    @Override
+    public void setUp() {
+        super.setUp();
+
+        when(config.parallelPreCheck()).thenReturn(true);
+    }
+
+    @Test
+    public void test_PerformAuthentication_VerifyIssuedBeforeCheckUserCompletes() {
+        /** SET UP **/
+        String username = HelperFunctions.hashText("test_user", "1234", HashAlgorithm.MD5);
+
+        PromiseImpl<CheckUserResponse, NeverThrowsException> checkUserPromise = PromiseImpl.create();
+        when(api.checkUserAsync(any(), any(), any(), any(), any())).thenReturn(checkUserPromise);
+
+        VerifyResponse verifyResponse = new VerifyResponse();
+        verifyResponse.setMatch(true);
+        verifyResponse.setPatternEnrolled(true);
+        when(api.verify(username, typingPattern, "")).thenReturn(verifyResponse);
+
+        JsonValue sharedState = new JsonObject()
+                .put(USERNAME, "test_user")
+                .put(Constants.DEVICE_TYPE, 0)
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TYPING_PATTERN, typingPattern)
+                .build();
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        TDNAAuthentication authentication = new TDNAAuthentication(config, state, api);
+        AuthenticationData authData = new AuthenticationData(username, typingPattern, DeviceType.DESKTOP, null, ActionType.VERIFY, "");
+
+        /** TEST **/
+        Promise<StateChange, NeverThrowsException> promise = authentication.performAuthenticationAsync(authData);
+
+        verify(api).verifyAsync(username, typingPattern, "");
+        Assert.assertFalse("outcome must wait for the pattern count", promise.isDone());
+
+        CheckUserResponse checkUserResponse = new CheckUserResponse();
+        checkUserResponse.setPatternCount(3);
+        checkUserPromise.handleResult(checkUserResponse);
+
+        Assert.assertTrue("outcome must be available once both calls completed", promise.isDone());
+
+        ExitNodeStateChange exitStateChange = (ExitNodeStateChange) promise.getOrThrowUninterruptibly();
+        Assert.assertEquals("outcome must be 'match'", TypingDNADecisionOutcome.MATCH.name(), exitStateChange.outcome);
+        Assert.assertEquals("patternsEnrolled must be 4", 4, (int) exitStateChange.sharedState.get(Constants.PATTERNS_ENROLLED).asInteger());
+    }
+}
@@ -37,8 +37,12 @@ import org.mockito.Mock;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.TextOutputCallback;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.mockito.Mockito.*;
 
@@ -239,6 +243,63 @@ public class RecorderIntegrationTest {
         Assert.assertTrue("form is displayed", useCase.isFormDisplayed());
     }
 
+    @Test
+    public void test_DisplayForm_RecorderScript_Slots() {
+        JsonValue sharedState = new JsonObject()
+                .put(Constants.TEXT_TO_ENTER, "text to enter")
+                .put(Constants.PREVIOUS_ACTION, ActionType.ENROLL.getAction())
+                .build();
+        JsonValue transientState = new JsonObject()
+                .put(Constants.TEXT_ID, "text id")
+                .build();
+
+        State state = new State(sharedState, transientState, new ArrayList<>());
+        DisplayFormStateChange stateChange = (DisplayFormStateChange) new Recorder(config, state).displayForm(ActionType.VERIFY);
+        String script = ((ScriptTextOutputCallback) stateChange.callbacks.get(0)).getMessage();
+
+        Assert.assertTrue("script must start with the recorder script", script.startsWith("if (typeof TypingDNA === 'undefined') { script }\n"));
+        Assert.assertTrue("script must contain the textId", script.contains("var textId = \"text id\";\n"));
+        Assert.assertTrue("script must contain the text to enter", script.contains("var textToEnter = \"text to enter\";\n"));
+        Assert.assertTrue("script must highlight the text to enter", script.contains("var shortPhraseText = \"text to enter\";\n"));
+        Assert.assertTrue("script must change the button text on enroll", script.contains("lgnBtn.value = 'Enroll';"));
+
+        state = new State(new JsonObject().build(), new JsonObject().build(), new ArrayList<>());
+        stateChange = (DisplayFormStateChange) new Recorder(config, state).displayForm(ActionType.VERIFY);
+        script = ((ScriptTextOutputCallback) stateChange.callbacks.get(0)).getMessage();
+
+        Assert.assertTrue("textId must be undefined", script.contains("var textId = undefined;\n"));
+        Assert.assertTrue("text to enter must be undefined", script.contains("var textToEnter = undefined;\n"));
+        Assert.assertFalse("script must not highlight any text", script.contains("setHighlight"));
+        Assert.assertFalse("script must not change the button text", script.contains("lgnBtn"));
+    }
+
+    @Test
+    public void test_DisplayForm_StaticScriptOrigin() throws IOException {
+        Path directory = Files.createTempDirectory("typingdna");
+        when(config.staticScriptOrigin()).thenReturn("/openam/typingdna/");
+        when(config.staticScriptDirectory()).thenReturn(directory.toString());
+
+        State state = new State(new JsonObject().build(), new JsonObject().build(), new ArrayList<>());
+        DisplayFormStateChange stateChange = (DisplayFormStateChange) new Recorder(config, state).displayForm(ActionType.VERIFY);
+        String script = ((ScriptTextOutputCallback) stateChange.callbacks.get(0)).getMessage();
+
+        List<Path> bundles = Files.list(directory).collect(Collectors.toList());
+        Assert.assertEquals("the bundle must be published", 1, bundles.size());
+
+        Path bundle = bundles.get(0);
+        Assert.assertTrue("bundle name must be content addressed", bundle.getFileName().toString().matches("typingdna-[0-9a-f]{16}\\.js"));
+        Assert.assertEquals("bundle must contain the recorder and the visualizer",
+                "script\n" + Constants.typingPatternVisualizer + "\n", new String(Files.readAllBytes(bundle), StandardCharsets.UTF_8));
+
+        Assert.assertFalse("script must not inline the recorder", script.contains("if (typeof TypingDNA === 'undefined') { script }"));
+        Assert.assertFalse("script must not inline the visualizer", script.contains(Constants.typingPatternVisualizer));
+        Assert.assertTrue("script must load the bundle", script.contains("scriptElem.src = '/openam/typingdna/" + bundle.getFileName() + "';"));
+        Assert.assertTrue("script must check the bundle integrity", script.contains("scriptElem.integrity = 'sha384-"));
+
+        Files.delete(bundle);
+        Files.delete(directory);
+    }
+
     private void verifySharedState(JsonValue sharedState) {
         Assert.assertNotNull("sharedState cannot be null", sharedState);
         Assert.assertEquals(String.format("sharedState must have %s key", 1), 1, sharedState.keys().size());
@@ -0,0 +1,195 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core;
+
+import com.google.common.collect.ImmutableList;
+import com.typingdna.util.ConfigAdapter;
+import com.typingdna.util.Constants;
+import org.forgerock.openam.scripting.service.ScriptConfiguration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import static org.mockito.Mockito.*;
+
+public class RecorderScriptTemplateTest {
+
+    /** The engine running the generated script; the pom brings it in as a test dependency. */
+    static final String ENGINE_NAME = "graal.js";
+
+    /** A TypingDNA recorder class which records what the generated script does with it. */
+    static final String RECORDER_STUB =
+            "function TypingDNA() {\n" +
+            "    if (TypingDNA.instance) { return TypingDNA.instance; }\n" +
+            "    TypingDNA.instance = this;\n" +
+            "}\n" +
+            "TypingDNA.prototype.start = function () { log.push('start'); };\n" +
+            "TypingDNA.prototype.reset = function () { log.push('reset'); };\n" +
+            "TypingDNA.prototype.addTarget = function (id) { log.push('addTarget:' + id); };\n" +
+            "TypingDNA.prototype.isMobile = function () { return 0; };\n" +
+            "TypingDNA.prototype.getTextId = function (text) { return 'textId:' + text; };\n" +
+            "TypingDNA.prototype.getTypingPattern = function (options) { return 'pattern:' + options.type + ':' + options.text; };\n";
+
+    /** Just enough of the DOM of an AM login page for the recorder script and the visualizer to run. */
+    static final String DOM_STUB =
+            "var log = [];\n" +
+            "function Element(tagName, id, type) {\n" +
+            "    this.tagName = tagName; this.id = id || ''; this.type = type || ''; this.value = ''; this.text = '';\n" +
+            "    this.style = {}; this.attributes = {}; this.children = []; this.listeners = {};\n" +
+            "    this.parentNode = null; this.parentElement = null;\n" +
+            "}\n" +
+            "Object.defineProperty(Element.prototype, 'textContent', {\n" +
+            "    get: function () { var text = this.text; for (var i = 0; i < this.children.length; i++) { text += this.children[i].textContent; } return text; },\n" +
+            "    set: function (text) { this.text = text; this.children = []; }\n" +
+            "});\n" +
+            "Element.prototype.setAttribute = function (name, value) { this.attributes[name] = String(value); };\n" +
+            "Element.prototype.appendChild = function (child) { this.children.push(child); child.parentNode = child.parentElement = this; return child; };\n" +
+            "Element.prototype.insertBefore = function (child) { this.children.unshift(child); child.parentNode = child.parentElement = this; return child; };\n" +
+            "Element.prototype.addEventListener = function (type, listener) { (this.listeners[type] = this.listeners[type] || []).push(listener); };\n" +
+            "Element.prototype.removeEventListener = function () {};\n" +
+            "Element.prototype.dispatchEvent = function (event) { log.push(event.type + ':' + this.id + '=' + this.value); };\n" +
+            "Element.prototype.getBoundingClientRect = function () { return { top: 0, right: 0, width: 0, height: 0 }; };\n" +
+            "Element.prototype.getContext = function () { return { clearRect: function () {}, fillRect: function () {} }; };\n" +
+            "var form = new Element('FORM', 'form');\n" +
+            "var all = {};\n" +
+            "function add(element) { all[element.id] = element; if (element.tagName !== 'DIV') { form.appendChild(element); } return element; }\n" +
+            "add(new Element('INPUT', 'idToken1', 'text'));\n" +
+            "add(new Element('INPUT', 'idToken2', 'password'));\n" +
+            "add(new Element('INPUT', '" + Constants.DEVICE_TYPE_OUTPUT_VARIABLE + "', 'hidden'));\n" +
+            "add(new Element('INPUT', '" + Constants.PATTERN_OUTPUT_VARIABLE + "', 'hidden'));\n" +
+            "add(new Element('INPUT', '" + Constants.TEXT_ID_OUTPUT_VARIABLE + "', 'hidden'));\n" +
+            "add(new Element('BUTTON', 'loginButton_0'));\n" +
+            "add(new Element('DIV', 'callback_1')).textContent = 'text to enter';\n" +
+            "var document = {\n" +
+            "    forms: [{ elements: all }],\n" +
+            "    head: new Element('HEAD', 'head'),\n" +
+            "    getElementById: function (id) { return all[id] || null; },\n" +
+            "    getElementsByTagName: function (tagName) { var result = []; for (var id in all) { if (all[id].tagName === tagName.toUpperCase()) { result.push(all[id]); } } return result; },\n" +
+            "    createElement: function (tagName) { log.push('createElement:' + tagName.toUpperCase()); return new Element(tagName.toUpperCase()); },\n" +
+            "    createEvent: function () { return { initEvent: function (type) { this.type = type; } }; },\n" +
+            "    querySelector: function () { return form; },\n" +
+            "    addEventListener: function () {},\n" +
+            "    removeEventListener: function () {}\n" +
+            "};\n";
+
+    /** Types into the inputs, submits the form and reports everything the script did. */
+    static final String SIMULATION =
+            "\n" +
+            "function fire(element, type) { var listeners = element.listeners[type] || []; for (var i = 0; i < listeners.length; i++) { listeners[i]({ target: element }); } }\n" +
+            "all.idToken1.value = 'text to';\n" +
+            "fire(all.idToken1, 'input');\n" +
+            "all.idToken2.value = 'secret';\n" +
+            "all.loginButton_0.onclick({});\n" +
+            "var highlight = [];\n" +
+            "for (var i = 0; i < all.callback_1.children.length; i++) { highlight.push(all.callback_1.children[i].textContent); }\n" +
+            "JSON.stringify({\n" +
+            "    log: log,\n" +
+            "    deviceType: all." + Constants.DEVICE_TYPE_OUTPUT_VARIABLE + ".value,\n" +
+            "    typingPattern: all." + Constants.PATTERN_OUTPUT_VARIABLE + ".value,\n" +
+            "    textId: all." + Constants.TEXT_ID_OUTPUT_VARIABLE + ".value,\n" +
+            "    button: all.loginButton_0.value,\n" +
+            "    autocomplete: form.attributes.autocomplete || null,\n" +
+            "    copy: all.idToken1.oncopy ? all.idToken1.oncopy() : null,\n" +
+            "    paste: all.idToken1.onpaste ? all.idToken1.onpaste() : null,\n" +
+            "    highlight: highlight\n" +
+            "});\n";
+
+    @Mock
+    private ScriptConfiguration scriptConfiguration;
+    @Mock
+    private ConfigAdapter config;
+
+    @Before
+    public void setUp() {
+        scriptConfiguration = mock(ScriptConfiguration.class);
+        config = mock(ConfigAdapter.class);
+
+        when(config.script()).thenReturn(scriptConfiguration);
+        when(scriptConfiguration.getScript()).thenReturn(RECORDER_STUB);
+        when(config.targetIds()).thenReturn(ImmutableList.of("idToken1", "idToken2"));
+        when(config.submitButtonId()).thenReturn("loginButton_0");
+    }
+
+    @Test
+    public void test_Minify() {
+        Assert.assertEquals("whitespace must be removed", " var a=1;if(a){b(x,y);}\nreturn a+ +b;var c='  ;  ';c(); ",
+                RecorderScriptTemplate.minify("  var a = 1;  \n\n    if (a) {\n        b(x, y);\n    }\n  return a + +b;\n  var c = '  ;  ';\n  c(); ", (char) 0));
+        Assert.assertEquals("a segment starting inside a string must keep it", " a b \";c=\" d \"",
+                RecorderScriptTemplate.minify(" a b \";  c = \" d \"", '"'));
+        Assert.assertEquals("escaped quotes must not end a string", "'a\\' b';c",
+                RecorderScriptTemplate.minify("'a\\' b';   c", (char) 0));
+    }
+
+    @Test
+    public void test_Minified_IsSmaller() {
+        for (boolean showVisualizer : new boolean[]{true, false}) {
+            for (boolean disableCopyAndPaste : new boolean[]{true, false}) {
+                RecorderScriptTemplate full = template(showVisualizer, disableCopyAndPaste, false);
+                RecorderScriptTemplate minified = template(showVisualizer, disableCopyAndPaste, true);
+
+                int fixed = RECORDER_STUB.length() + Constants.typingPatternVisualizer.length();
+                int fullSize = full.render("1234", "text to enter", ActionType.ENROLL).length() - fixed;
+                int minifiedSize = minified.render("1234", "text to enter", ActionType.ENROLL).length() - fixed;
+
+                Assert.assertTrue(String.format("generated script must shrink by at least 15%%, was %d, is %d", fullSize, minifiedSize),
+                        minifiedSize < fullSize * 0.85);
+            }
+        }
+    }
+
+    @Test
+    public void test_Minified_BehavesTheSame() throws ScriptException {
+        Assert.assertNotNull("graal.js must be on the test classpath", new ScriptEngineManager().getEngineByName(ENGINE_NAME));
+
+        for (boolean showVisualizer : new boolean[]{true, false}) {
+            for (boolean disableCopyAndPaste : new boolean[]{true, false}) {
+                RecorderScriptTemplate full = template(showVisualizer, disableCopyAndPaste, false);
+                RecorderScriptTemplate minified = template(showVisualizer, disableCopyAndPaste, true);
+
+                for (String textId : new String[]{null, "1234"}) {
+                    for (String textToEnter : new String[]{null, "text to enter"}) {
+                        for (ActionType previousAction : new ActionType[]{ActionType.VERIFY, ActionType.ENROLL}) {
+                            String expected = run(full.render(textId, textToEnter, previousAction));
+                            String actual = run(minified.render(textId, textToEnter, previousAction));
+
+                            Assert.assertEquals(String.format("minified script must behave the same, showVisualizer=%s disableCopyAndPaste=%s textId=%s textToEnter=%s previousAction=%s",
+                                    showVisualizer, disableCopyAndPaste, textId, textToEnter, previousAction), expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private RecorderScriptTemplate template(boolean showVisualizer, boolean disableCopyAndPaste, boolean minify) {
+        when(config.showVisualizer()).thenReturn(showVisualizer);
+        when(config.disableCopyAndPaste()).thenReturn(disableCopyAndPaste);
+        when(config.minifyRecorderScript()).thenReturn(minify);
+        return RecorderScriptTemplate.forConfig(config);
+    }
+
+    private static String run(String script) throws ScriptException {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName(ENGINE_NAME);
+        return String.valueOf(engine.eval(DOM_STUB + script + SIMULATION));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core.businesslogic;
+
+import com.typingdna.util.Metrics;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReplayGuardTest {
+
+    private static final String typingPattern = "0,3.2,0,0,11,1004326382,1,77,-1,1,61,-1,1,150,-1,2,68,23,2,27,6,1,0,0,1,2,1,4224896695,1,1,0,0,0,1,1080,1920,1,1015,106,0,1495460187|2983,119|210,74|180,92|75,47|89,150|165,76|90,107|123,72|193,94|93,101|116,105";
+
+    @Test
+    public void test_CheckAndRecord_Replay() {
+        ReplayGuard guard = new ReplayGuard(100, 1);
+
+        Assert.assertFalse("first submission must not be a replay", guard.checkAndRecord("key", "user", typingPattern));
+        Assert.assertTrue("second submission must be a replay", guard.checkAndRecord("key", "user", typingPattern));
+        Assert.assertFalse("same pattern of another user must not be a replay", guard.checkAndRecord("key", "other user", typingPattern));
+        Assert.assertFalse("same pattern with another api key must not be a replay", guard.checkAndRecord("other key", "user", typingPattern));
+        Assert.assertFalse("another pattern must not be a replay", guard.checkAndRecord("key", "user", typingPattern + "|93,101"));
+
+        Assert.assertEquals("checks must be 5", 5, guard.getChecks());
+        Assert.assertEquals("replays must be 1", 1, guard.getReplays());
+    }
+
+    @Test
+    public void test_CheckAndRecord_Window() {
+        ReplayGuard guard = new ReplayGuard(100, 1);
+        long memory = guard.getMemoryBytes();
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertFalse("pattern " + i + " must not be a replay", guard.checkAndRecord("key", "user", typingPattern + "|" + i));
+        }
+
+        Assert.assertTrue("the most recent pattern must be remembered", guard.checkAndRecord("key", "user", typingPattern + "|999"));
+        Assert.assertTrue("the patterns of the previous generation must be remembered", guard.checkAndRecord("key", "user", typingPattern + "|850"));
+        Assert.assertEquals("generations must be rotated", 9, guard.getRotations());
+        Assert.assertFalse("old patterns must be forgotten", guard.checkAndRecord("key", "user", typingPattern + "|0"));
+        Assert.assertEquals("memory must not grow", memory, guard.getMemoryBytes());
+    }
+
+    @Test
+    public void test_CheckAndRecord_FalsePositiveRate() {
+        ReplayGuard guard = new ReplayGuard(10000, 1000);
+
+        for (int i = 0; i < 20000; i++) {
+            guard.checkAndRecord("key", "user", typingPattern + "|" + i);
+        }
+        long falsePositives = guard.getReplays();
+        for (int i = 20000; i < 120000; i++) {
+            guard.checkAndRecord("key", "other user", typingPattern + "|" + i);
+        }
+        falsePositives = guard.getReplays() - falsePositives;
+
+        Assert.assertTrue("false positives must stay within twice the configured rate, got " + falsePositives, falsePositives <= 200);
+    }
+
+    @Test
+    public void test_GetInstance() {
+        ReplayGuard.shutdown();
+
+        Assert.assertSame("guards with the same settings must be shared", ReplayGuard.getInstance("node1", 100, 1), ReplayGuard.getInstance("node2", 100, 1));
+        Assert.assertNotSame("guards with other settings must not be shared", ReplayGuard.getInstance("node1", 100, 1), ReplayGuard.getInstance("node3", 200, 1));
+    }
+
+    @Test
+    public void test_GetInstance_DropsUnusedGuards() {
+        ReplayGuard.shutdown();
+        ReplayGuard shared = ReplayGuard.getInstance("node1", 100, 1);
+        ReplayGuard.getInstance("node2", 100, 1);
+        ReplayGuard.getInstance("node3", 200, 1);
+        Assert.assertTrue("gauges must be registered", Metrics.getInstance().getGauges().containsKey("replayGuard 200 1ppm checks"));
+
+        ReplayGuard.getInstance("node3", 300, 1);
+        Assert.assertEquals("guard no node uses must be dropped", 2, ReplayGuard.size());
+        Assert.assertFalse("gauges of the dropped guard must be unregistered", Metrics.getInstance().getGauges().containsKey("replayGuard 200 1ppm checks"));
+
+        ReplayGuard.getInstance("node1", 300, 1);
+        Assert.assertSame("guard used by another node must be kept", shared, ReplayGuard.getInstance("node2", 100, 1));
+
+        ReplayGuard.release("node2");
+        Assert.assertEquals("guard of a node without replay protection must be dropped", 1, ReplayGuard.size());
+        Assert.assertTrue("gauges of the remaining guard must be kept", Metrics.getInstance().getGauges().containsKey("replayGuard 300 1ppm checks"));
+
+        ReplayGuard.shutdown();
+        Assert.assertEquals("guards must be dropped on shutdown", 0, ReplayGuard.size());
+    }
+
+    @Test
+    public void test_GetInstance_ResolvedOnce() {
+        ReplayGuard.shutdown();
+        ReplayGuard guard = ReplayGuard.getInstance("node1", 100, 1);
+
+        Assert.assertSame("a node must get the same guard again", guard, ReplayGuard.getInstance("node1", 100, 1));
+        ReplayGuard.release("node2");
+        Assert.assertEquals("releasing a node without a guard must keep the others", 1, ReplayGuard.size());
+
+        ReplayGuard.shutdown();
+        Assert.assertNotSame("a new guard must be created after shutdown", guard, ReplayGuard.getInstance("node1", 100, 1));
+        ReplayGuard.shutdown();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.core.businesslogic;
+
+import com.typingdna.api.model.PatternType;
+import com.typingdna.core.businesslogic.TypingPatternParser.Rejection;
+import com.typingdna.core.businesslogic.TypingPatternParser.Result;
+import com.typingdna.util.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TypingPatternParserTest {
+
+    private static final String header = "0,3.2,0,0,11,1004326382,1,77,-1,1,61,-1,1,150,-1,2,68,23,2,27,6,1,0,0,1,2,1,4224896695,1,1,0,0,0,1,1080,1920,1,1015,106,0,1495460187";
+    private static final String keystrokes = "2983,119|210,74|180,92|75,47|89,150|165,76|90,107|123,72|193,94|93,101|116,105";
+    private static final String typingPattern = header + "|" + keystrokes;
+
+    @Test
+    public void test_Parse_SameText() {
+        Result result = TypingPatternParser.parse(typingPattern);
+
+        Assert.assertTrue("pattern must be valid", result.isValid());
+        Assert.assertNull("rejection must be null", result.getRejection());
+        Assert.assertEquals("pattern type must be SAME_TEXT", PatternType.SAME_TEXT, result.getPatternType());
+        Assert.assertEquals("keystrokes must be 11", 11, result.getKeystrokes());
+    }
+
+    @Test
+    public void test_Parse_SameTextExtended() {
+        Result result = TypingPatternParser.parse(typingPattern.replaceFirst("^0,3.2,0,0,", "0,3.2,0,1,"));
+
+        Assert.assertTrue("pattern must be valid", result.isValid());
+        Assert.assertEquals("pattern type must be SAME_TEXT_EXTENDED", PatternType.SAME_TEXT_EXTENDED, result.getPatternType());
+    }
+
+    @Test
+    public void test_Parse_HeaderOnly() {
+        Result result = TypingPatternParser.parse(header);
+
+        Assert.assertTrue("pattern must be valid", result.isValid());
+        Assert.assertEquals("keystrokes must be 0", 0, result.getKeystrokes());
+    }
+
+    @Test
+    public void test_Parse_Empty() {
+        assertRejected(null, Rejection.EMPTY);
+        assertRejected("", Rejection.EMPTY);
+        assertRejected(Constants.PATTERN_OUTPUT_VARIABLE, Rejection.EMPTY);
+        assertRejected(Constants.PATTERN_OUTPUT_VARIABLE.toLowerCase(), Rejection.EMPTY);
+    }
+
+    @Test
+    public void test_Parse_Oversized() {
+        StringBuilder builder = new StringBuilder(typingPattern);
+        while (builder.length() <= Constants.MAX_TYPING_PATTERN_LENGTH) {
+            builder.append("|210,74");
+        }
+
+        assertRejected(builder.toString(), Rejection.OVERSIZED);
+    }
+
+    @Test
+    public void test_Parse_Truncated() {
+        assertRejected("0,3.2,0,0", Rejection.TRUNCATED);
+        assertRejected("0,3.2,0|2983,119|210,74", Rejection.TRUNCATED);
+        assertRejected(header + "|", Rejection.TRUNCATED);
+    }
+
+    @Test
+    public void test_Parse_Malformed() {
+        assertRejected("0,3.2,0,x,11|2983,119", Rejection.MALFORMED);
+        assertRejected("0,3.2,,0,11|2983,119", Rejection.MALFORMED);
+        assertRejected("0,3..2,0,0,11|2983,119", Rejection.MALFORMED);
+        assertRejected("0,-,0,0,11|2983,119", Rejection.MALFORMED);
+        assertRejected(header + "|2983,119||210,74", Rejection.MALFORMED);
+        assertRejected(typingPattern + "|", Rejection.MALFORMED);
+    }
+
+    @Test
+    public void test_Parse_Synthetic() {
+        assertRejected(header + "|100,100|100,100|100,100|100,100", Rejection.SYNTHETIC);
+
+        Assert.assertTrue("a few identical keystrokes must be accepted", TypingPatternParser.parse(header + "|100,100|100,100|100,100").isValid());
+        Assert.assertTrue("keystrokes with a common prefix must be accepted", TypingPatternParser.parse(header + "|100,100|100,1000|100,100|100,100").isValid());
+    }
+
+    private static void assertRejected(String typingPattern, Rejection rejection) {
+        Result result = TypingPatternParser.parse(typingPattern);
+
+        Assert.assertFalse(String.format("pattern '%s' must be rejected", typingPattern), result.isValid());
+        Assert.assertEquals(String.format("pattern '%s' must be rejected as %s", typingPattern, rejection), rejection, result.getRejection());
+        Assert.assertEquals("pattern type must be INVALID", PatternType.INVALID, result.getPatternType());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HTTPRequestPoolTest {
+
+    private static final String EU = "https://api.typingdna.com";
+    private static final String US = "https://us-api.typingdna.com";
+
+    private long now;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        HTTPRequestPool.shutdown();
+        HTTPRequestPool.setClock(() -> now);
+    }
+
+    @After
+    public void tearDown() {
+        HTTPRequestPool.shutdown();
+        HTTPRequestPool.setClock(System::currentTimeMillis);
+    }
+
+    @Test
+    public void test_Acquire_SharedBySettings() throws Exception {
+        HTTPRequest first = HTTPRequestPool.acquire(EU, 8000, 64);
+
+        Assert.assertSame("the same settings must share the client", first, HTTPRequestPool.acquire(EU, 8000, 64));
+        Assert.assertNotSame("another url must have its own client", first, HTTPRequestPool.acquire(US, 8000, 64));
+        Assert.assertNotSame("another timeout must have its own client", first, HTTPRequestPool.acquire(EU, 4000, 64));
+        Assert.assertNotSame("another pool size must have its own client", first, HTTPRequestPool.acquire(EU, 8000, 32));
+        Assert.assertEquals("a client must be created for every settings", 4, HTTPRequestPool.size());
+    }
+
+    @Test
+    public void test_Release_IdleEviction() throws Exception {
+        HTTPRequest request = HTTPRequestPool.acquire(EU, 8000, 64);
+        HTTPRequestPool.release(request);
+
+        now += Constants.CONNECTION_POOL_IDLE_TIMEOUT;
+        HTTPRequestPool.acquire(US, 8000, 64);
+        Assert.assertEquals("client must be kept until the idle timeout", 2, HTTPRequestPool.size());
+
+        now += 1;
+        HTTPRequestPool.acquire(US, 8000, 64);
+        Assert.assertEquals("idle client must be closed", 1, HTTPRequestPool.size());
+        Assert.assertNotSame("a new client must be created once closed", request, HTTPRequestPool.acquire(EU, 8000, 64));
+    }
+
+    @Test
+    public void test_Release_LeasedNotEvicted() throws Exception {
+        HTTPRequest request = HTTPRequestPool.acquire(EU, 8000, 64);
+        HTTPRequestPool.acquire(EU, 8000, 64);
+        HTTPRequestPool.release(request);
+
+        now += Constants.CONNECTION_POOL_IDLE_TIMEOUT + 1;
+        HTTPRequestPool.release(HTTPRequestPool.acquire(US, 8000, 64));
+        Assert.assertSame("leased client must not be closed", request, HTTPRequestPool.acquire(EU, 8000, 64));
+
+        HTTPRequestPool.release(request);
+        HTTPRequestPool.release(request);
+        now += Constants.CONNECTION_POOL_IDLE_TIMEOUT + 1;
+        HTTPRequest other = HTTPRequestPool.acquire(US, 8000, 64);
+        Assert.assertEquals("client must be closed once no longer leased", 1, HTTPRequestPool.size());
+        Assert.assertSame("only the new client must be kept", other, HTTPRequestPool.acquire(US, 8000, 64));
+    }
+
+    @Test
+    public void test_Shutdown() throws Exception {
+        HTTPRequest request = HTTPRequestPool.acquire(EU, 8000, 64);
+        HTTPRequestPool.acquire(US, 8000, 64);
+
+        HTTPRequestPool.shutdown();
+
+        Assert.assertEquals("all clients must be closed", 0, HTTPRequestPool.size());
+        Assert.assertNotSame("a new client must be created after shutdown", request, HTTPRequestPool.acquire(EU, 8000, 64));
+    }
+}
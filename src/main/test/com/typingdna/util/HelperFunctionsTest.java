@@ -0,0 +1,112 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class HelperFunctionsTest {
+
+    private static final int ITERATIONS = 10000;
+
+    @Test
+    public void test_Fnv1a32_KnownValues() {
+        Assert.assertEquals("null text must hash to an empty string", "", HelperFunctions.fnv1a32(null));
+        Assert.assertEquals("empty text must hash to the offset basis", Long.toString(0x721b5ad4L), HelperFunctions.fnv1a32(""));
+        Assert.assertEquals("hash must be case insensitive", HelperFunctions.fnv1a32("text to enter"), HelperFunctions.fnv1a32("Text To ENTER"));
+    }
+
+    @Test
+    public void test_Fnv1a32_MatchesReference_DefaultCharset() {
+        Random random = new Random(0x721b5ad4L);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String text = randomText(random);
+            Assert.assertEquals("hash mismatch for \"" + text + "\"", referenceFnv1a32(text, Charset.defaultCharset()), HelperFunctions.fnv1a32(text));
+        }
+    }
+
+    @Test
+    public void test_Fnv1a32_MatchesReference_Utf8() {
+        Random random = new Random(0x01000193L);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String text = randomText(random);
+            Assert.assertEquals("hash mismatch for \"" + text + "\"", referenceFnv1a32(text, StandardCharsets.UTF_8), HelperFunctions.fnv1a32(text, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void test_PushTypingPattern() {
+        Assert.assertEquals("first pattern must be kept alone", "a", HelperFunctions.pushTypingPattern(null, "a", 3));
+        Assert.assertEquals("first pattern must be kept alone", "a", HelperFunctions.pushTypingPattern("", "a", 3));
+        Assert.assertEquals("limit 1 must keep only the new pattern", "c", HelperFunctions.pushTypingPattern("b;a", "c", 1));
+        Assert.assertEquals("limit lower than 1 must keep only the new pattern", "c", HelperFunctions.pushTypingPattern("b;a", "c", 0));
+        Assert.assertEquals("patterns under the limit must all be kept", "c;b;a", HelperFunctions.pushTypingPattern("b;a", "c", 3));
+        Assert.assertEquals("patterns under the limit must all be kept", "c;b;a", HelperFunctions.pushTypingPattern("b;a", "c", 4));
+        Assert.assertEquals("oldest patterns must be dropped", "d;c", HelperFunctions.pushTypingPattern("c;b;a", "d", 2));
+    }
+
+    @Test
+    public void test_PushTypingPattern_Bounded() {
+        String typingPatterns = null;
+        for (int i = 0; i < 100; i++) {
+            typingPatterns = HelperFunctions.pushTypingPattern(typingPatterns, String.valueOf(i), 5);
+        }
+        Assert.assertEquals("only the 5 most recent patterns must be kept", "99;98;97;96;95", typingPatterns);
+    }
+
+    /**
+     * The original BigInteger implementation, kept as the reference the int arithmetic version must match bit for bit.
+     */
+    private static String referenceFnv1a32(String text, Charset charset) {
+        String data = text.toLowerCase();
+        BigInteger hash = new BigInteger("721b5ad4", 16);
+
+        for (byte b : data.getBytes(charset)) {
+            hash = hash.xor(BigInteger.valueOf((int) b & 0xff));
+            hash = hash.multiply(new BigInteger("01000193", 16)).mod(new BigInteger("2").pow(32));
+        }
+        return hash.toString();
+    }
+
+    private static String randomText(Random random) {
+        int length = random.nextInt(64);
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.append((char) (' ' + random.nextInt(95)));
+                    break;
+                case 1:
+                    builder.append((char) random.nextInt(0x800));
+                    break;
+                case 2:
+                    builder.append((char) random.nextInt(0x10000));
+                    break;
+                default:
+                    builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+}
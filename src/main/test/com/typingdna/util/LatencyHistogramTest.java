@@ -0,0 +1,95 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    private long now;
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        histogram = new LatencyHistogram(() -> now);
+    }
+
+    @Test
+    public void test_Percentile_NotEnoughSamples() {
+        for (int i = 0; i < Constants.LATENCY_MIN_SAMPLES - 1; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+
+        Assert.assertEquals("percentile must be -1", -1, histogram.percentile(99));
+    }
+
+    @Test
+    public void test_Percentile() {
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertWithin(500, histogram.percentile(50));
+        assertWithin(950, histogram.percentile(95));
+        assertWithin(990, histogram.percentile(99));
+        assertWithin(1000, histogram.percentile(100));
+    }
+
+    @Test
+    public void test_Percentile_FollowsRecentLatencies() {
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        assertWithin(1000, histogram.percentile(99));
+
+        now += TimeUnit.SECONDS.toNanos(Constants.LATENCY_WINDOW);
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertWithin(1000, histogram.percentile(99));
+        assertWithin(100, histogram.percentile(50));
+
+        now += TimeUnit.SECONDS.toNanos(Constants.LATENCY_WINDOW);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        assertWithin(100, histogram.percentile(99));
+
+        now += TimeUnit.SECONDS.toNanos(3 * Constants.LATENCY_WINDOW);
+        Assert.assertEquals("old latencies must be dropped", -1, histogram.percentile(99));
+    }
+
+    @Test
+    public void test_Percentile_OutOfRange() {
+        for (int i = 0; i < 100; i++) {
+            histogram.record(0);
+            histogram.record(TimeUnit.HOURS.toNanos(1));
+        }
+
+        Assert.assertEquals("shortest bucket must be 1 ms", 1, histogram.percentile(1));
+        Assert.assertTrue("longest bucket must be over 2 minutes", histogram.percentile(100) > TimeUnit.MINUTES.toMillis(2));
+    }
+
+    private static void assertWithin(long expectedMillis, long actualMillis) {
+        Assert.assertTrue(String.format("percentile must be within 25%% of %d ms, got %d ms", expectedMillis, actualMillis),
+                actualMillis >= expectedMillis && actualMillis <= expectedMillis * 1.25);
+    }
+}
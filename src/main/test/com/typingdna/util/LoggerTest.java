@@ -0,0 +1,121 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class LoggerTest {
+
+    private final Logger logger = Logger.getInstance();
+
+    @Before
+    public void setUp() {
+        logger.setDebug(false);
+        System.clearProperty(Logger.DEBUG_PROPERTY);
+        System.clearProperty(Logger.DEBUG_USERNAMES_PROPERTY);
+    }
+
+    @After
+    public void tearDown() {
+        setUp();
+        logger.debugScope(false, null, 0).close();
+    }
+
+    @Test
+    public void test_GetInstance() {
+        Assert.assertSame("logger must be a singleton", logger, Logger.getInstance());
+    }
+
+    @Test
+    public void test_DebugScope_Node() throws Exception {
+        Assert.assertFalse("debug must be off", logger.isDebugRequested());
+
+        try (Logger.DebugScope ignored = logger.debugScope(true, "hash", 0)) {
+            Assert.assertTrue("debug must be on in the scope", logger.isDebugRequested());
+            Assert.assertFalse("debug must be off on other threads",
+                    CompletableFuture.supplyAsync(logger::isDebugRequested).get(1, TimeUnit.SECONDS));
+        }
+
+        Assert.assertFalse("debug must be off after the scope", logger.isDebugRequested());
+    }
+
+    @Test
+    public void test_DebugScope_Nested() {
+        try (Logger.DebugScope outer = logger.debugScope(true, "hash", 0)) {
+            try (Logger.DebugScope inner = logger.debugScope(true, "hash", 0)) {
+                Assert.assertTrue("debug must be on in the inner scope", logger.isDebugRequested());
+            }
+            Assert.assertTrue("debug must stay on in the outer scope", logger.isDebugRequested());
+        }
+        Assert.assertFalse("debug must be off after the scopes", logger.isDebugRequested());
+    }
+
+    @Test
+    public void test_DebugScope_TracedUsername() {
+        System.setProperty(Logger.DEBUG_USERNAMES_PROPERTY, "other, ABCDEF ");
+
+        try (Logger.DebugScope ignored = logger.debugScope(false, "abcdef", 0)) {
+            Assert.assertTrue("debug must be on for a traced user", logger.isDebugRequested());
+        }
+        try (Logger.DebugScope ignored = logger.debugScope(false, "123456", 0)) {
+            Assert.assertFalse("debug must be off for other users", logger.isDebugRequested());
+        }
+    }
+
+    @Test
+    public void test_DebugScope_Sampled() {
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            try (Logger.DebugScope ignored = logger.debugScope(false, HelperFunctions.fnv1a32("user" + i), 10)) {
+                if (logger.isDebugRequested()) {
+                    sampled++;
+                }
+            }
+        }
+        Assert.assertTrue(String.format("about 10%% of the users must be sampled, got %d", sampled), sampled > 800 && sampled < 1200);
+
+        String username = HelperFunctions.fnv1a32("user");
+        boolean first;
+        try (Logger.DebugScope ignored = logger.debugScope(false, username, 50)) {
+            first = logger.isDebugRequested();
+        }
+        try (Logger.DebugScope ignored = logger.debugScope(false, username, 50)) {
+            Assert.assertEquals("sampling must be the same for every node", first, logger.isDebugRequested());
+        }
+        try (Logger.DebugScope ignored = logger.debugScope(false, username, 100)) {
+            Assert.assertTrue("all the users must be sampled", logger.isDebugRequested());
+        }
+    }
+
+    @Test
+    public void test_DebugProperty() {
+        System.setProperty(Logger.DEBUG_PROPERTY, "true");
+        logger.debugScope(false, null, 0).close();
+        Assert.assertTrue("debug must be on for all the threads", logger.isDebugRequested());
+
+        System.clearProperty(Logger.DEBUG_PROPERTY);
+        logger.debugScope(false, null, 0).close();
+        Assert.assertFalse("debug must be switched off at runtime", logger.isDebugRequested());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsTest {
+
+    private Metrics metrics;
+
+    @Before
+    public void setUp() {
+        Metrics.shutdown();
+        metrics = Metrics.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.shutdown();
+    }
+
+    @Test
+    public void test_StatusFromHttpStatus() {
+        Assert.assertEquals("status class must match", Metrics.Status.SUCCESS, Metrics.Status.fromHttpStatus(200));
+        Assert.assertEquals("status class must match", Metrics.Status.CLIENT_ERROR, Metrics.Status.fromHttpStatus(404));
+        Assert.assertEquals("status class must match", Metrics.Status.SERVER_ERROR, Metrics.Status.fromHttpStatus(503));
+    }
+
+    @Test
+    public void test_RecordCall() {
+        metrics.recordCall("POST /verify", TimeUnit.MILLISECONDS.toNanos(100), Metrics.Status.SUCCESS, 1);
+        metrics.recordCall("POST /verify", TimeUnit.MILLISECONDS.toNanos(100), Metrics.Status.SUCCESS, 1);
+        metrics.recordCall("POST /verify", TimeUnit.MILLISECONDS.toNanos(100), Metrics.Status.CLIENT_ERROR, 10);
+        metrics.recordCall("GET /user", TimeUnit.MILLISECONDS.toNanos(100), Metrics.Status.REJECTED, -1);
+
+        Map<String, Long> calls = metrics.getCalls();
+        Assert.assertEquals("calls must be counted by status class", 3, calls.size());
+        Assert.assertEquals("call count must match", Long.valueOf(2), calls.get("POST /verify 2xx"));
+        Assert.assertEquals("call count must match", Long.valueOf(1), calls.get("POST /verify 4xx"));
+        Assert.assertEquals("call count must match", Long.valueOf(1), calls.get("GET /user rejected"));
+
+        Map<String, Long> messageCodes = metrics.getMessageCodes();
+        Assert.assertEquals("message codes must be counted", 2, messageCodes.size());
+        Assert.assertEquals("message code count must match", Long.valueOf(2), messageCodes.get("POST /verify 1"));
+        Assert.assertEquals("message code count must match", Long.valueOf(1), messageCodes.get("POST /verify 10"));
+    }
+
+    @Test
+    public void test_Latencies() {
+        for (int i = 0; i < Constants.LATENCY_MIN_SAMPLES - 1; i++) {
+            metrics.recordCall("POST /auto", TimeUnit.MILLISECONDS.toNanos(100), Metrics.Status.SUCCESS, 1);
+        }
+        Assert.assertTrue("latencies must be empty", metrics.getLatencies().isEmpty());
+
+        metrics.recordCall("POST /auto", TimeUnit.MILLISECONDS.toNanos(100), Metrics.Status.SUCCESS, 1);
+
+        Map<String, Long> latencies = metrics.getLatencies();
+        Assert.assertEquals("latencies must have 3 percentiles", 3, latencies.size());
+        long p99 = latencies.get("POST /auto 2xx p99");
+        Assert.assertTrue("p99 must be about 100 ms", p99 >= 80 && p99 <= 125);
+    }
+
+    @Test
+    public void test_Gauges() {
+        long[] value = {1};
+        metrics.registerGauge("test value", () -> value[0]);
+        metrics.registerGauge("other value", () -> 2);
+        value[0] = 3;
+
+        Assert.assertEquals("gauge must be read when reported", Long.valueOf(3), metrics.getGauges().get("test value"));
+
+        metrics.unregisterGauges("test ");
+        Assert.assertNull("gauge must be unregistered", metrics.getGauges().get("test value"));
+        Assert.assertEquals("other gauges must be kept", Long.valueOf(2), metrics.getGauges().get("other value"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_MBean() throws Exception {
+        metrics.recordOutcome("TRUE");
+        metrics.recordOutcome("TRUE");
+        metrics.recordOutcome("RETRY");
+
+        Map<String, Long> outcomes = metrics.getOutcomes();
+        Assert.assertEquals("outcome count must match", Long.valueOf(2), outcomes.get("TRUE"));
+        Assert.assertEquals("outcome count must match", Long.valueOf(1), outcomes.get("RETRY"));
+
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        Assert.assertTrue("MBean must be registered", ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        Assert.assertNotNull("outcomes must be readable through JMX", ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Outcomes"));
+
+        Metrics.shutdown();
+        Assert.assertFalse("MBean must be unregistered", ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        Assert.assertTrue("outcomes must be dropped", metrics.getOutcomes().isEmpty());
+    }
+}
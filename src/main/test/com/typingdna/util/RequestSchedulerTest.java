@@ -0,0 +1,130 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.forgerock.openam.auth.node.api.NodeProcessException;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.PromiseImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.forgerock.util.promise.Promises.newResultPromise;
+
+public class RequestSchedulerTest {
+
+    @Test
+    public void test_WithTimeout_Completed() throws Exception {
+        PromiseImpl<String, NodeProcessException> request = PromiseImpl.create();
+        Promise<String, NodeProcessException> result = RequestScheduler.withTimeout(request, 1000);
+
+        request.handleResult("response");
+
+        Assert.assertEquals("result must be the response", "response", result.getOrThrow(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_WithTimeout_TimedOut() {
+        PromiseImpl<String, NodeProcessException> request = PromiseImpl.create();
+        Promise<String, NodeProcessException> result = RequestScheduler.withTimeout(request, 50);
+
+        Assert.assertThrows(NodeProcessException.class, () -> result.getOrThrow(1, TimeUnit.SECONDS));
+        Assert.assertFalse("request must not be cancelled", request.isCancelled());
+    }
+
+    @Test
+    public void test_Hedge_FirstCompletesInTime() throws Exception {
+        List<PromiseImpl<String, NodeProcessException>> requests = new ArrayList<>();
+        Promise<String, NodeProcessException> result = RequestScheduler.hedge(() -> newRequest(requests), 200);
+
+        requests.get(0).handleResult("first");
+
+        Assert.assertEquals("result must be the first response", "first", result.getOrThrow(1, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        Assert.assertEquals("a single request must be sent", 1, requests.size());
+    }
+
+    @Test
+    public void test_Hedge_SecondCompletesFirst() throws Exception {
+        List<PromiseImpl<String, NodeProcessException>> requests = new ArrayList<>();
+        Promise<String, NodeProcessException> result = RequestScheduler.hedge(() -> newRequest(requests), 20);
+
+        waitForRequests(requests, 2);
+        requests.get(1).handleResult("second");
+
+        Assert.assertEquals("result must be the second response", "second", result.getOrThrow(1, TimeUnit.SECONDS));
+        requests.get(0).handleResult("first");
+        Assert.assertEquals("result must not change", "second", result.getOrThrow());
+    }
+
+    @Test
+    public void test_Hedge_FirstFailsAfterHedge() throws Exception {
+        List<PromiseImpl<String, NodeProcessException>> requests = new ArrayList<>();
+        Promise<String, NodeProcessException> result = RequestScheduler.hedge(() -> newRequest(requests), 20);
+
+        waitForRequests(requests, 2);
+        requests.get(0).handleException(new NodeProcessException("first failed"));
+        Assert.assertFalse("result must wait for the second request", result.isDone());
+        requests.get(1).handleResult("second");
+
+        Assert.assertEquals("result must be the second response", "second", result.getOrThrow(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_Hedge_BothFail() {
+        List<PromiseImpl<String, NodeProcessException>> requests = new ArrayList<>();
+        Promise<String, NodeProcessException> result = RequestScheduler.hedge(() -> newRequest(requests), 20);
+
+        waitForRequests(requests, 2);
+        requests.get(0).handleException(new NodeProcessException("first failed"));
+        requests.get(1).handleException(new NodeProcessException("second failed"));
+
+        Assert.assertThrows(NodeProcessException.class, () -> result.getOrThrow(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_Hedge_AlreadyCompleted() {
+        Promise<String, NodeProcessException> request = newResultPromise("response");
+
+        Assert.assertSame("completed requests must be returned as they are", request, RequestScheduler.hedge(() -> request, 20));
+    }
+
+    private static PromiseImpl<String, NodeProcessException> newRequest(List<PromiseImpl<String, NodeProcessException>> requests) {
+        PromiseImpl<String, NodeProcessException> request = PromiseImpl.create();
+        synchronized (requests) {
+            requests.add(request);
+        }
+        return request;
+    }
+
+    private static void waitForRequests(List<PromiseImpl<String, NodeProcessException>> requests, int count) {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (requests) {
+                if (requests.size() >= count) {
+                    return;
+                }
+            }
+            Thread.yield();
+        }
+        Assert.fail(String.format("%d requests must be sent", count));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import com.google.common.collect.ImmutableList;
+import com.typingdna.core.ActionType;
+import org.forgerock.json.JsonValue;
+import org.forgerock.openam.utils.JsonObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.forgerock.openam.auth.node.api.SharedStateConstants.USERNAME;
+import static org.mockito.Mockito.*;
+
+public class StateTest {
+
+    private AtomicInteger copies;
+
+    @Before
+    public void setUp() {
+        copies = new AtomicInteger();
+    }
+
+    @Test
+    public void test_Reads_DoNotCopy() {
+        JsonValue sharedState = tracked(new JsonObject().put(USERNAME, "test_user").build());
+        JsonValue transientState = tracked(new JsonObject().put(Constants.TYPING_PATTERN, "tp").build());
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+
+        Assert.assertEquals("username must be 'test_user'", "test_user", state.getUsername());
+        Assert.assertEquals("typingPattern must be 'tp'", "tp", state.getTypingPattern());
+        Assert.assertEquals("retries must be 0", 0, state.getRetries());
+        Assert.assertEquals("no copy must be made", 0, copies.get());
+    }
+
+    @Test
+    public void test_Writes_CopyOnce() {
+        JsonValue sharedState = tracked(new JsonObject().put(USERNAME, "test_user").build());
+        JsonValue transientState = tracked(new JsonObject().build());
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        state.setPreviousAction(ActionType.VERIFY);
+        state.incrementRetries();
+        state.setPatternsEnrolled(3);
+        state.setMessage("message");
+        state.setTypingPattern("tp");
+        state.setTextId("text id");
+
+        JsonValue sharedSnapshot = state.getSharedState();
+        JsonValue transientSnapshot = state.getTransientState();
+
+        Assert.assertEquals("shared and transient state must be copied once each, the snapshots must not copy", 2, copies.get());
+        Assert.assertEquals("retries must be 1", 1, (int) sharedSnapshot.get(Constants.VERIFY_RETRIES).asInteger());
+        Assert.assertEquals("patternsEnrolled must be 3", 3, (int) sharedSnapshot.get(Constants.PATTERNS_ENROLLED).asInteger());
+        Assert.assertEquals("typingPattern must be 'tp'", "tp", transientSnapshot.get(Constants.TYPING_PATTERN).asString());
+    }
+
+    @Test
+    public void test_Writes_DoNotChangeTheOriginal() {
+        JsonValue sharedState = new JsonObject().put(USERNAME, "test_user").build();
+        JsonValue transientState = new JsonObject().build();
+
+        State state = new State(sharedState, transientState, ImmutableList.of());
+        state.setMessage("message");
+        state.setTypingPattern("tp");
+
+        Assert.assertNull("original shared state must not change", sharedState.get(Constants.MESSAGE).asString());
+        Assert.assertNull("original transient state must not change", transientState.get(Constants.TYPING_PATTERN).asString());
+        Assert.assertEquals("message must be 'message'", "message", state.getMessage());
+    }
+
+    @Test
+    public void test_Snapshot_NotAffectedByLaterWrites() {
+        JsonValue sharedState = tracked(new JsonObject().put(USERNAME, "test_user").build());
+
+        State state = new State(sharedState, new JsonObject().build(), ImmutableList.of());
+        state.setMessage("first");
+        JsonValue first = state.getSharedState();
+        Assert.assertEquals("writes and the snapshot must copy once in total", 1, copies.get());
+
+        state.setMessage("second");
+        JsonValue second = state.getSharedState();
+
+        Assert.assertEquals("first snapshot must keep its message", "first", first.get(Constants.MESSAGE).asString());
+        Assert.assertEquals("second snapshot must have the new message", "second", second.get(Constants.MESSAGE).asString());
+        Assert.assertEquals("only a write made after a snapshot must copy again", 2, copies.get());
+    }
+
+    @Test
+    public void test_Snapshot_HandsOffWithoutCopy() {
+        JsonValue sharedState = tracked(new JsonObject().put(USERNAME, "test_user").build());
+
+        State state = new State(sharedState, new JsonObject().build(), ImmutableList.of());
+        state.setPreviousAction(ActionType.RETRY);
+        state.setMessage("message");
+        JsonValue first = state.getSharedState();
+        JsonValue second = state.getSharedState();
+
+        Assert.assertEquals("message set through the state must be in the snapshot", "message", first.get(Constants.MESSAGE).asString());
+        Assert.assertSame("snapshots without writes in between must not copy", first, second);
+        Assert.assertEquals("state must be copied once in total", 1, copies.get());
+        Assert.assertNull("original shared state must not change", sharedState.get(Constants.MESSAGE).asString());
+    }
+
+    private JsonValue tracked(JsonValue value) {
+        JsonValue spy = spy(value);
+        doAnswer(invocation -> {
+            copies.incrementAndGet();
+            return tracked((JsonValue) invocation.callRealMethod());
+        }).when(spy).copy();
+        return spy;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+package com.typingdna.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class TracerTest {
+
+    private final Tracer tracer = Tracer.getInstance();
+    private final List<Span> spans = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() {
+        tracer.setExporter(spans::add);
+    }
+
+    @After
+    public void tearDown() {
+        tracer.setExporter(null);
+    }
+
+    @Test
+    public void test_Disabled() {
+        tracer.setExporter(null);
+
+        try (Span span = tracer.startSpan("disabled")) {
+            Assert.assertSame("span must be the no-op span", Span.NOOP, span);
+            Assert.assertFalse("span must not be recording", span.isRecording());
+            Assert.assertSame("no span must be current", Span.NOOP, tracer.currentSpan());
+        }
+        Assert.assertTrue("no span must be exported", spans.isEmpty());
+    }
+
+    @Test
+    public void test_NestedSpans() {
+        Span parent = tracer.startSpan("parent").setAttribute(Tracer.NODE_ID, "node");
+        Span child = tracer.startSpan("child");
+        Assert.assertSame("child must be current", child, tracer.currentSpan());
+
+        child.close();
+        Assert.assertSame("parent must be current again", parent, tracer.currentSpan());
+        parent.close();
+        Assert.assertSame("no span must be current", Span.NOOP, tracer.currentSpan());
+
+        Assert.assertEquals("spans must be exported when they end", 2, spans.size());
+        Assert.assertSame("child must be exported first", child, spans.get(0));
+        Assert.assertEquals("child must share the trace", parent.getTraceId(), child.getTraceId());
+        Assert.assertEquals("child must reference its parent", parent.getSpanId(), child.getParentSpanId());
+        Assert.assertEquals("root span must have no parent", "", parent.getParentSpanId());
+        Assert.assertEquals("attribute must be kept", "node", parent.getAttributes().get(Tracer.NODE_ID));
+        Assert.assertTrue("duration must be set", child.getDurationNanos() >= 0);
+    }
+
+    @Test
+    public void test_DetachedSpan() throws Exception {
+        try (Span parent = tracer.startSpan("parent")) {
+            Span detached = tracer.startDetachedSpan("detached");
+            Assert.assertSame("detached span must not become current", parent, tracer.currentSpan());
+            Assert.assertEquals("detached span must reference its parent", parent.getSpanId(), detached.getParentSpanId());
+
+            Thread thread = new Thread(() -> {
+                Span child = tracer.withSpan(detached, () -> tracer.startDetachedSpan("child"));
+                Assert.assertSame("span must not stay current", Span.NOOP, tracer.currentSpan());
+                child.end();
+                detached.setError(new IllegalStateException("failed")).end();
+                detached.end();
+            });
+            thread.start();
+            thread.join();
+
+            Assert.assertEquals("spans must be exported once", 2, spans.size());
+            Assert.assertEquals("child must reference the detached span", detached.getSpanId(), spans.get(0).getParentSpanId());
+            Assert.assertTrue("detached span must be an error", detached.isError());
+            Assert.assertEquals("error must be recorded", "IllegalStateException: failed", detached.getAttributes().get("error"));
+        }
+    }
+
+    @Test
+    public void test_Traceparent() {
+        try (Span span = tracer.startSpan("span")) {
+            String traceparent = span.getTraceparent();
+            Assert.assertTrue("traceparent must follow the W3C format", traceparent.matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+            Assert.assertEquals("traceparent must hold the trace and span ids",
+                    "00-" + span.getTraceId() + "-" + span.getSpanId() + "-01", traceparent);
+        }
+    }
+
+    @Test
+    public void test_CreateExporter() {
+        Assert.assertSame("no exporter must disable tracing", SpanExporter.NOOP, Tracer.createExporter(null));
+        Assert.assertTrue("log must create the log exporter", Tracer.createExporter("log") instanceof LogSpanExporter);
+        Assert.assertTrue("class name must create the exporter",
+                Tracer.createExporter(LogSpanExporter.class.getName()) instanceof LogSpanExporter);
+        Assert.assertSame("unknown exporter must disable tracing", SpanExporter.NOOP, Tracer.createExporter("com.example.Missing"));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+  Copyright 2020 TypingDNA Inc. (https://www.typingdna.com)
+
+  Licensed under the Apache License, Version 2.0 (the "License");
+  you may not use this file except in compliance with the License.
+  You may obtain a copy of the License at
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+*/
+
+
+package com.typingdna.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class UsernameHasherTest {
+
+    @Test
+    public void test_Hash() throws Exception {
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            UsernameHasher hasher = new UsernameHasher("1234", algorithm, 0);
+
+            Assert.assertEquals(String.format("%s hash must match", algorithm), expected("1234test_user", algorithm), hasher.hash("test_user"));
+            Assert.assertEquals(String.format("%s hash must not depend on the previous one", algorithm), expected("1234other_user", algorithm), hasher.hash("other_user"));
+        }
+    }
+
+    @Test
+    public void test_Hash_NullSalt() throws Exception {
+        UsernameHasher hasher = new UsernameHasher(null, HashAlgorithm.MD5, 0);
+
+        Assert.assertEquals("null salt must be hashed as before", expected("nulltest_user", HashAlgorithm.MD5), hasher.hash("test_user"));
+    }
+
+    @Test
+    public void test_Hash_Cached() throws Exception {
+        UsernameHasher hasher = new UsernameHasher("1234", HashAlgorithm.SHA256, 2);
+
+        String hash = hasher.hash("test_user");
+        Assert.assertSame("hash must be cached", hash, hasher.hash("test_user"));
+
+        hasher.hash("user1");
+        hasher.hash("user2");
+        Assert.assertNotSame("least recently used hash must be evicted", hash, hasher.hash("test_user"));
+        Assert.assertEquals("hash must not change", hash, hasher.hash("test_user"));
+    }
+
+    @Test
+    public void test_Hash_RecentlyUsedKept() {
+        UsernameHasher hasher = new UsernameHasher("1234", HashAlgorithm.MD5, 4);
+
+        String hash = hasher.hash("test_user");
+        String other = hasher.hash("other_user");
+        hasher.hash("user1");
+        Assert.assertSame("hash of the previous generation must be cached", hash, hasher.hash("test_user"));
+
+        hasher.hash("user2");
+        Assert.assertSame("recently used hash must be kept", hash, hasher.hash("test_user"));
+        Assert.assertNotSame("hash not used since must be evicted", other, hasher.hash("other_user"));
+    }
+
+    @Test
+    public void test_Hash_Concurrent() throws Exception {
+        UsernameHasher hasher = new UsernameHasher("1234", HashAlgorithm.SHA1, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        String username = "user" + (i % 32);
+                        Assert.assertEquals("hash must match", expected("1234" + username, HashAlgorithm.SHA1), hasher.hash(username));
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_GetInstance() {
+        Assert.assertSame("hasher must be shared", UsernameHasher.getInstance("1234", HashAlgorithm.MD5), UsernameHasher.getInstance("1234", HashAlgorithm.MD5));
+        Assert.assertNotSame("salts must not share the hasher", UsernameHasher.getInstance("1234", HashAlgorithm.MD5), UsernameHasher.getInstance("5678", HashAlgorithm.MD5));
+        Assert.assertThrows(IllegalArgumentException.class, () -> UsernameHasher.getInstance("1234", null));
+    }
+
+    private static String expected(String text, HashAlgorithm algorithm) throws Exception {
+        return HelperFunctions.bytesToHex(MessageDigest.getInstance(algorithm.toString()).digest(text.getBytes()));
+    }
+}